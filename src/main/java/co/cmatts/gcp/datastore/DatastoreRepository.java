@@ -1,18 +1,24 @@
 package co.cmatts.gcp.datastore;
 
 import co.cmatts.gcp.datastore.model.Person;
+import co.cmatts.gcp.datastore.model.PersonSummary;
 import co.cmatts.gcp.datastore.model.Siblings;
 import com.google.cloud.NoCredentials;
 import com.google.cloud.ServiceOptions;
 import com.google.cloud.datastore.DatastoreOptions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.googlecode.objectify.ObjectifyFactory;
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Result;
 import com.googlecode.objectify.util.Closeable;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.googlecode.objectify.ObjectifyService.ofy;
 import static java.util.Arrays.asList;
@@ -21,8 +27,21 @@ import static java.util.Objects.nonNull;
 import static java.util.stream.Collectors.toList;
 
 public class DatastoreRepository {
+    private static final int DEFAULT_QUERY_THREADS = 8;
+    private static final Executor DEFAULT_QUERY_EXECUTOR = Executors.newFixedThreadPool(DEFAULT_QUERY_THREADS,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("datastore-query-%d")
+                    .setDaemon(true)
+                    .build());
+
+    private final Executor queryExecutor;
 
     public DatastoreRepository() {
+        this(DEFAULT_QUERY_EXECUTOR);
+    }
+
+    public DatastoreRepository(Executor queryExecutor) {
+        this.queryExecutor = queryExecutor;
         DatastoreOptions.Builder builder = DatastoreOptions
                 .newBuilder()
                 .setRetrySettings(ServiceOptions.getNoRetrySettings());
@@ -52,6 +71,12 @@ public class DatastoreRepository {
         }
     }
 
+    public Stream<Person> streamPeople(int pageSize) {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(new PagedQueryIterator<>(Person.class, "name", pageSize, queryExecutor), Spliterator.ORDERED | Spliterator.NONNULL),
+                false);
+    }
+
     public List<Person> findPersonByFather(String id) {
         return findEntitiesByAttribute("fatherId", id);
     }
@@ -70,6 +95,38 @@ public class DatastoreRepository {
         }
     }
 
+    public List<PersonSummary> findPersonSummariesByFather(String id) {
+        return findSummariesByAttribute("fatherId", id, "motherId", "yearOfBirth").stream()
+                .map(p -> summary(p, id, p.getMotherId()))
+                .collect(toList());
+    }
+
+    public List<PersonSummary> findPersonSummariesByMother(String id) {
+        return findSummariesByAttribute("motherId", id, "fatherId", "yearOfBirth").stream()
+                .map(p -> summary(p, p.getFatherId(), id))
+                .collect(toList());
+    }
+
+    private List<Person> findSummariesByAttribute(String attrName, String id, String... projection) {
+        if (id == null) {
+            return emptyList();
+        }
+
+        // Datastore cannot project a property used in an equality filter, the caller fills it in from the filter value
+        try (Closeable session = ObjectifyService.begin()) {
+            return ofy().load().type(Person.class).filter(attrName + " =", id).project(projection).list();
+        }
+    }
+
+    private PersonSummary summary(Person person, String fatherId, String motherId) {
+        return PersonSummary.builder()
+                .id(person.getId())
+                .yearOfBirth(person.getYearOfBirth())
+                .fatherId(fatherId)
+                .motherId(motherId)
+                .build();
+    }
+
     public Siblings findSiblings(String id) {
         Optional<Person> p = findPerson(id);
         if (p.isEmpty()) {
@@ -102,6 +159,83 @@ public class DatastoreRepository {
                 .collect(toList());
     }
 
+    public List<List<Person>> findAncestors(String id, int maxDepth) {
+        validateDepth(maxDepth);
+        Optional<Person> person = findPerson(id);
+        if (person.isEmpty()) {
+            return emptyList();
+        }
+
+        Set<String> visited = new HashSet<>(Set.of(id));
+        List<List<Person>> generations = new ArrayList<>();
+        List<Person> frontier = List.of(person.get());
+        while (generations.size() < maxDepth) {
+            List<String> parentIds = frontier.stream()
+                    .flatMap(p -> Stream.of(p.getFatherId(), p.getMotherId()))
+                    .filter(Objects::nonNull)
+                    .filter(visited::add)
+                    .toList();
+            if (parentIds.isEmpty()) {
+                break;
+            }
+
+            frontier = findPeopleByIds(parentIds);
+            generations.add(frontier);
+        }
+        return generations;
+    }
+
+    private List<Person> findPeopleByIds(Collection<String> ids) {
+        try (Closeable session = ObjectifyService.begin()) {
+            return ofy().load().type(Person.class).ids(ids).values().stream()
+                    .sorted(Comparator.comparing(Person::getId))
+                    .collect(toList());
+        }
+    }
+
+    public List<List<Person>> findDescendants(String id, int maxDepth) {
+        validateDepth(maxDepth);
+        if (id == null) {
+            return emptyList();
+        }
+
+        Set<String> visited = new HashSet<>(Set.of(id));
+        List<List<Person>> generations = new ArrayList<>();
+        List<String> frontier = List.of(id);
+        while (generations.size() < maxDepth) {
+            List<Person> children = findChildren(frontier).stream()
+                    .filter(child -> visited.add(child.getId()))
+                    .sorted(Comparator.comparing(Person::getId))
+                    .collect(toList());
+            if (children.isEmpty()) {
+                break;
+            }
+
+            generations.add(children);
+            frontier = children.stream().map(Person::getId).toList();
+        }
+        return generations;
+    }
+
+    private List<Person> findChildren(List<String> parentIds) {
+        // Objectify 6 does not support IN filters, so each parent's queries are issued concurrently instead
+        List<CompletableFuture<List<Person>>> queries = parentIds.stream()
+                .flatMap(parentId -> Stream.of("fatherId", "motherId")
+                        .map(attrName -> CompletableFuture.supplyAsync(() -> findEntitiesByAttribute(attrName, parentId), queryExecutor)))
+                .collect(toList());
+
+        return queries.stream()
+                .map(CompletableFuture::join)
+                .flatMap(List::stream)
+                .collect(toList());
+    }
+
+    private void validateDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Traversal expects a depth of at least one generation");
+        }
+    }
+
     public final void save(List<Person> people) {
         try (Closeable session = ObjectifyService.begin()) {
             ofy().save().entities(people).now();
@@ -0,0 +1,94 @@
+package co.cmatts.gcp.datastore;
+
+import com.google.cloud.datastore.Cursor;
+import com.google.cloud.datastore.QueryResults;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.cmd.Query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+class PagedQueryIterator<T> implements Iterator<T> {
+    private final Class<T> entityClass;
+    private final String order;
+    private final int pageSize;
+    private final Executor executor;
+    private CompletableFuture<Page<T>> nextPage;
+    private Iterator<T> currentPage = Collections.emptyIterator();
+
+    PagedQueryIterator(Class<T> entityClass, String order, int pageSize, Executor executor) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("PagedQueryIterator expects a page size of at least one");
+        }
+        this.entityClass = entityClass;
+        this.order = order;
+        this.pageSize = pageSize;
+        this.executor = executor;
+        this.nextPage = fetchPage(null);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!currentPage.hasNext()) {
+            if (nextPage == null) {
+                return false;
+            }
+
+            Page<T> page = awaitNextPage();
+            nextPage = page.cursor == null ? null : fetchPage(page.cursor);
+            currentPage = page.entities.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    private CompletableFuture<Page<T>> fetchPage(Cursor cursor) {
+        return CompletableFuture.supplyAsync(() -> ObjectifyService.run(() -> {
+            Query<T> query = ofy().load().type(entityClass).order(order).limit(pageSize);
+            if (cursor != null) {
+                query = query.startAt(cursor);
+            }
+
+            QueryResults<T> results = query.iterator();
+            List<T> entities = new ArrayList<>(pageSize);
+            results.forEachRemaining(entities::add);
+            return new Page<>(entities, entities.size() < pageSize ? null : results.getCursorAfter());
+        }), executor);
+    }
+
+    private Page<T> awaitNextPage() {
+        try {
+            return nextPage.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static class Page<T> {
+        private final List<T> entities;
+        private final Cursor cursor;
+
+        private Page(List<T> entities, Cursor cursor) {
+            this.entities = entities;
+            this.cursor = cursor;
+        }
+    }
+}
@@ -19,6 +19,7 @@ public class Person {
     private String id;
     @Index
     private String name;
+    @Index
     private Integer yearOfBirth;
     private Integer yearOfDeath;
     @Index
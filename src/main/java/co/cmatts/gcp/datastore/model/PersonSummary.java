@@ -0,0 +1,15 @@
+package co.cmatts.gcp.datastore.model;
+
+import lombok.*;
+
+@Data
+@Builder
+@EqualsAndHashCode(of = "id")
+@NoArgsConstructor
+@AllArgsConstructor
+public class PersonSummary {
+    private String id;
+    private Integer yearOfBirth;
+    private String fatherId;
+    private String motherId;
+}
@@ -4,69 +4,72 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.apache.commons.lang3.StringUtils;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
-import static java.util.stream.Collectors.toList;
-
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class Siblings {
+    private static final Comparator<SortKey> SIBLING_ORDER = Comparator
+            .comparing((SortKey k) -> k.otherParentId, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparingInt(k -> k.yearOfBirth)
+            .thenComparing(k -> k.id, Comparator.nullsFirst(Comparator.naturalOrder()));
+
     private List<Person> fullSiblings;
     private List<Person> stepByFather;
     private List<Person> stepByMother;
     private List<Person> parents;
 
     public Siblings(Person person, Set<Person> allSiblings, List<Person> parents) {
-        fullSiblings = extractFullSiblings(person, allSiblings);
-        stepByFather = extractStepSiblingsByFather(person, allSiblings);
-        stepByMother = extractStepSiblingsByMother(person, allSiblings);
-        this.parents = parents;
-    }
+        List<SortKey> full = new ArrayList<>();
+        List<SortKey> byFather = new ArrayList<>();
+        List<SortKey> byMother = new ArrayList<>();
 
-    private List<Person> extractStepSiblingsByMother(Person person, Set<Person> allSiblings) {
-        return allSiblings.stream()
-                .filter(s -> !Objects.equals(s.getFatherId(), person.getFatherId()) &&
-                        Objects.equals(s.getMotherId(), person.getMotherId()))
-                .sorted((a, b) -> sortByParentYear(a, b, a.getFatherId(), b.getFatherId()))
-                .collect(toList());
-    }
+        for (Person s : allSiblings) {
+            boolean sameFather = Objects.equals(s.getFatherId(), person.getFatherId());
+            boolean sameMother = Objects.equals(s.getMotherId(), person.getMotherId());
+            if (sameFather && sameMother) {
+                full.add(new SortKey(s, null));
+            } else if (sameFather) {
+                byFather.add(new SortKey(s, s.getMotherId()));
+            } else if (sameMother) {
+                byMother.add(new SortKey(s, s.getFatherId()));
+            }
+        }
 
-    private List<Person> extractStepSiblingsByFather(Person person, Set<Person> allSiblings) {
-        return allSiblings.stream()
-                .filter(s -> Objects.equals(s.getFatherId(), person.getFatherId()) &&
-                        !Objects.equals(s.getMotherId(), person.getMotherId()))
-                .sorted((a, b) -> sortByParentYear(a, b, a.getMotherId(), b.getMotherId()))
-                .collect(toList());
+        fullSiblings = sorted(full);
+        stepByFather = sorted(byFather);
+        stepByMother = sorted(byMother);
+        this.parents = parents;
     }
 
-    private List<Person> extractFullSiblings(Person person, Set<Person> allSiblings) {
-        return allSiblings.stream()
-                .filter(s -> Objects.equals(s.getFatherId(), person.getFatherId()) &&
-                        Objects.equals(s.getMotherId(), person.getMotherId()))
-                .sorted(this::comparePeople)
-                .collect(toList());
+    // Orders by the other parent's id, then year of birth, then id, with missing values first
+    private static List<Person> sorted(List<SortKey> keys) {
+        keys.sort(SIBLING_ORDER);
+        List<Person> people = new ArrayList<>(keys.size());
+        for (SortKey key : keys) {
+            people.add(key.person);
+        }
+        return people;
     }
 
-    private int comparePeople(Person a, Person b) {
-        return a.getYearOfBirth() > b.getYearOfBirth() ||
-                (Objects.equals(a.getYearOfBirth(), b.getYearOfBirth()) && StringUtils.compare(a.getId(), b.getId()) > 0) ? 1 : -1;
-    }
+    private static final class SortKey {
+        private final Person person;
+        private final String otherParentId;
+        private final int yearOfBirth;
+        private final String id;
 
-    private int sortByParentYear(Person a, Person b, String aParentId, String bParentId) {
-        return
-                (Objects.equals(aParentId, bParentId) &&
-                        (b.getYearOfBirth() == null ||
-                                (a.getYearOfBirth() != null && (a.getYearOfBirth() > b.getYearOfBirth() ||
-                                        (Objects.equals(a.getYearOfBirth(), b.getYearOfBirth()) && StringUtils.compare(a.getId(), b.getId()) > 0)))))
-                        ||
-                        (!Objects.equals(aParentId, bParentId) &&
-                                ((aParentId != null && bParentId == null) || (aParentId != null && StringUtils.compare(aParentId, bParentId) > 0)))
-                        ? 1 : -1;
+        private SortKey(Person person, String otherParentId) {
+            this.person = person;
+            this.otherParentId = otherParentId;
+            this.yearOfBirth = person.getYearOfBirth() == null ? Integer.MIN_VALUE : person.getYearOfBirth();
+            this.id = person.getId();
+        }
     }
 }
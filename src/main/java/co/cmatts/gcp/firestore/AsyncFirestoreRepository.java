@@ -0,0 +1,193 @@
+package co.cmatts.gcp.firestore;
+
+import co.cmatts.gcp.firestore.model.Fact;
+import co.cmatts.gcp.firestore.model.FirestoreMappedBean;
+import co.cmatts.gcp.firestore.model.Person;
+import co.cmatts.gcp.firestore.model.Siblings;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static co.cmatts.gcp.firestore.FirestoreRepository.BATCH_SIZE;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+
+public class AsyncFirestoreRepository {
+    private static final int DEFAULT_MAX_CONCURRENT_BATCHES = 8;
+
+    private final FirestoreRepository repository;
+
+    public AsyncFirestoreRepository() {
+        this(new FirestoreRepository());
+    }
+
+    public AsyncFirestoreRepository(FirestoreRepository repository) {
+        this.repository = repository;
+    }
+
+    public CompletableFuture<Optional<Person>> findPerson(String id) {
+        if (id == null) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        Optional<Person> cached = repository.findCachedPerson(id);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        long readGeneration = repository.cacheGeneration();
+        return toCompletableFuture(repository.getFirestoreCollection(Person.class).document(id).get())
+                .thenApply(document -> document.exists()
+                        ? Optional.of(repository.cachePerson(document.toObject(Person.class), readGeneration))
+                        : Optional.empty());
+    }
+
+    public CompletableFuture<List<Person>> findPersonByFather(String id) {
+        return findEntitiesByAttribute(Person.class, "fatherId", id);
+    }
+
+    public CompletableFuture<List<Person>> findPersonByMother(String id) {
+        return findEntitiesByAttribute(Person.class, "motherId", id);
+    }
+
+    public CompletableFuture<List<Fact>> findFacts(String id) {
+        return findEntitiesByAttribute(Fact.class, "personId", id);
+    }
+
+    private <T extends FirestoreMappedBean> CompletableFuture<List<T>> findEntitiesByAttribute(Class<T> beanClass, String attrName, String id) {
+        if (id == null) {
+            return CompletableFuture.completedFuture(emptyList());
+        }
+
+        return toCompletableFuture(repository.queryByAttribute(beanClass, attrName, id))
+                .thenApply(snapshot -> snapshot.toObjects(beanClass));
+    }
+
+    public CompletableFuture<Siblings> findSiblings(String id) {
+        return findPerson(id).thenCompose(p -> {
+            if (p.isEmpty()) {
+                return CompletableFuture.completedFuture(new Siblings());
+            }
+            Person person = p.get();
+
+            CompletableFuture<Set<Person>> allSiblings = findPersonByFather(person.getFatherId())
+                    .thenCombine(findPersonByMother(person.getMotherId()),
+                            (byFather, byMother) -> Stream.concat(byFather.stream(), byMother.stream())
+                                    .collect(Collectors.toSet()));
+
+            return allSiblings.thenCompose(siblings -> extractParents(siblings)
+                    .thenApply(parents -> new Siblings(person, siblings, parents)));
+        });
+    }
+
+    private CompletableFuture<List<Person>> extractParents(Set<Person> allSiblings) {
+        List<Person> parents = new ArrayList<>();
+        List<DocumentReference> missingRefs = new ArrayList<>();
+        allSiblings.stream()
+                .map(s -> asList(s.getFatherId(), s.getMotherId()))
+                .flatMap(Collection::stream)
+                .filter(Objects::nonNull)
+                .distinct()
+                .forEach(parentId -> repository.findCachedPerson(parentId).ifPresentOrElse(parents::add,
+                        () -> missingRefs.add(repository.getFirestoreCollection(Person.class).document(parentId))));
+
+        if (missingRefs.isEmpty()) {
+            return CompletableFuture.completedFuture(sortedById(parents));
+        }
+
+        long readGeneration = repository.cacheGeneration();
+        return toCompletableFuture(repository.getFirestoreClient().getAll(missingRefs.toArray(new DocumentReference[0])))
+                .thenApply(documents -> {
+                    documents.stream()
+                            .filter(DocumentSnapshot::exists)
+                            .map(d -> repository.cachePerson(d.toObject(Person.class), readGeneration))
+                            .forEach(parents::add);
+                    return sortedById(parents);
+                });
+    }
+
+    private static List<Person> sortedById(List<Person> people) {
+        return people.stream()
+                .sorted(Comparator.comparing(Person::getId))
+                .collect(toList());
+    }
+
+    public CompletableFuture<List<Person>> findPeople() {
+        return toCompletableFuture(repository.peopleByName().get())
+                .thenApply(snapshot -> snapshot.toObjects(Person.class));
+    }
+
+    @SafeVarargs
+    public final CompletableFuture<Void> load(List<? extends FirestoreMappedBean>... dataLists) {
+        return load(DEFAULT_MAX_CONCURRENT_BATCHES, dataLists);
+    }
+
+    @SafeVarargs
+    public final CompletableFuture<Void> load(int maxConcurrentBatches, List<? extends FirestoreMappedBean>... dataLists) {
+        if (maxConcurrentBatches < 1) {
+            throw new IllegalArgumentException("load expects at least one concurrent batch");
+        }
+
+        List<FirestoreMappedBean> allData = Stream.of(dataLists).flatMap(List::stream).collect(toList());
+        List<List<FirestoreMappedBean>> batches = Lists.partition(allData, BATCH_SIZE);
+
+        // each lane commits its batches one after another, so at most maxConcurrentBatches commits are in flight
+        CompletableFuture<?>[] lanes = new CompletableFuture[Math.min(maxConcurrentBatches, batches.size())];
+        for (int lane = 0; lane < lanes.length; lane++) {
+            CompletableFuture<Void> commits = CompletableFuture.completedFuture(null);
+            for (int i = lane; i < batches.size(); i += lanes.length) {
+                List<FirestoreMappedBean> batch = batches.get(i);
+                commits = commits.thenCompose(previous -> toCompletableFuture(repository.newWriteBatch(batch).commit())
+                        .thenApply(result -> null));
+            }
+            lanes[lane] = commits;
+        }
+        return CompletableFuture.allOf(lanes)
+                .whenComplete((result, t) -> repository.invalidateCachedEntities());
+    }
+
+    public CompletableFuture<Void> updateEntities(List<? extends FirestoreMappedBean> entities) {
+        return AsyncFirestoreRepository.<Void>toCompletableFuture(repository.getFirestoreClient().runTransaction(
+                transaction -> {
+                    for (FirestoreMappedBean entity : entities) {
+                        transaction.set(repository.getFirestoreCollection(entity.getClass())
+                                .document(entity.getId()), entity);
+                    }
+                    return null;
+                }))
+                .whenComplete((result, t) -> repository.invalidateCachedEntities(entities));
+    }
+
+    static <T> CompletableFuture<T> toCompletableFuture(ApiFuture<T> apiFuture) {
+        CompletableFuture<T> future = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                apiFuture.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+
+        ApiFutures.addCallback(apiFuture, new ApiFutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+}
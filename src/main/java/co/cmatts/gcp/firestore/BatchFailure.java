@@ -0,0 +1,12 @@
+package co.cmatts.gcp.firestore;
+
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class BatchFailure {
+    int batchIndex;
+    List<String> documentIds;
+    Throwable cause;
+}
@@ -0,0 +1,15 @@
+package co.cmatts.gcp.firestore;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+@Value
+@Builder
+public class CacheConfig {
+    @Builder.Default
+    long maximumSize = 10_000;
+    @Builder.Default
+    Duration timeToLive = Duration.ofMinutes(5);
+}
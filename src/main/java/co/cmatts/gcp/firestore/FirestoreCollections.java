@@ -0,0 +1,60 @@
+package co.cmatts.gcp.firestore;
+
+import co.cmatts.gcp.firestore.model.FirestoreMappedBean;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.Firestore;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class FirestoreCollections {
+    private final Firestore firestore;
+    private final String collectionNamePrefix;
+    private final Map<Class<? extends FirestoreMappedBean>, CollectionReference> collections = new ConcurrentHashMap<>();
+    private final Map<String, Class<? extends FirestoreMappedBean>> collectionOwners = new ConcurrentHashMap<>();
+
+    public FirestoreCollections(Firestore firestore, String collectionNamePrefix, Collection<Class<? extends FirestoreMappedBean>> beanClasses) {
+        this.firestore = firestore;
+        this.collectionNamePrefix = collectionNamePrefix;
+        beanClasses.forEach(this::get);
+    }
+
+    public CollectionReference get(Class<? extends FirestoreMappedBean> beanClass) {
+        CollectionReference collection = collections.get(beanClass);
+        if (collection != null) {
+            return collection;
+        }
+        return collections.computeIfAbsent(beanClass, this::register);
+    }
+
+    private CollectionReference register(Class<? extends FirestoreMappedBean> beanClass) {
+        String collectionName = collectionNamePrefix + tableName(beanClass);
+        Class<? extends FirestoreMappedBean> owner = collectionOwners.putIfAbsent(collectionName, beanClass);
+        if (owner != null && owner != beanClass) {
+            throw new IllegalArgumentException(beanClass.getName() + " maps to collection " + collectionName
+                    + " which is already mapped by " + owner.getName());
+        }
+        return firestore.collection(collectionName);
+    }
+
+    static String tableName(Class<? extends FirestoreMappedBean> beanClass) {
+        String tableName;
+        try {
+            if (beanClass.getMethod("tableName").getDeclaringClass() == FirestoreMappedBean.class) {
+                throw new IllegalArgumentException(beanClass.getName() + " must override tableName");
+            }
+            tableName = beanClass.getDeclaredConstructor().newInstance().tableName();
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("getFirestoreCollection expects a FirestoreMappedBean");
+        }
+
+        if (StringUtils.isBlank(tableName)) {
+            throw new IllegalArgumentException(beanClass.getName() + " has a blank tableName");
+        }
+        return tableName;
+    }
+}
@@ -0,0 +1,106 @@
+package co.cmatts.gcp.firestore;
+
+import co.cmatts.gcp.firestore.model.FirestoreMappedBean;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.WriteResult;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Status;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+public class FirestoreIngester implements AutoCloseable {
+    private static final Set<Status.Code> TRANSIENT_CODES = EnumSet.of(
+            Status.Code.ABORTED,
+            Status.Code.DEADLINE_EXCEEDED,
+            Status.Code.INTERNAL,
+            Status.Code.RESOURCE_EXHAUSTED,
+            Status.Code.UNAVAILABLE);
+
+    private final BulkWriter bulkWriter;
+    private final Function<FirestoreMappedBean, DocumentReference> documentResolver;
+    private final int maxOutstandingWrites;
+    private final Semaphore outstandingWrites;
+    private final AtomicLong documentsWritten = new AtomicLong();
+    private final List<String> failedDocumentIds = Collections.synchronizedList(new ArrayList<>());
+    private final long start = System.nanoTime();
+    private boolean closed;
+
+    FirestoreIngester(BulkWriter bulkWriter, Function<FirestoreMappedBean, DocumentReference> documentResolver, IngestConfig config) {
+        if (config.getMaxOutstandingWrites() < 1) {
+            throw new IllegalArgumentException("FirestoreIngester expects at least one outstanding write");
+        }
+        this.bulkWriter = bulkWriter;
+        this.documentResolver = documentResolver;
+        this.maxOutstandingWrites = config.getMaxOutstandingWrites();
+        this.outstandingWrites = new Semaphore(maxOutstandingWrites);
+
+        bulkWriter.addWriteErrorListener(error ->
+                TRANSIENT_CODES.contains(error.getStatus().getCode()) && error.getFailedAttempts() < config.getMaxAttempts());
+    }
+
+    public void write(FirestoreMappedBean entity) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("FirestoreIngester has been closed");
+        }
+
+        if (!outstandingWrites.tryAcquire()) {
+            // BulkWriter only sends a partially filled batch on flush, so push buffered writes out before waiting on them
+            bulkWriter.flush();
+            outstandingWrites.acquire();
+        }
+        try {
+            ApiFutures.addCallback(bulkWriter.set(documentResolver.apply(entity), entity), new ApiFutureCallback<WriteResult>() {
+                @Override
+                public void onSuccess(WriteResult result) {
+                    documentsWritten.incrementAndGet();
+                    outstandingWrites.release();
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    failedDocumentIds.add(entity.getId());
+                    outstandingWrites.release();
+                }
+            }, MoreExecutors.directExecutor());
+        } catch (RuntimeException e) {
+            outstandingWrites.release();
+            throw e;
+        }
+    }
+
+    public void flush() throws ExecutionException, InterruptedException {
+        bulkWriter.flush().get();
+        awaitOutstandingWrites();
+    }
+
+    public IngestResult getResult() {
+        return new IngestResult(documentsWritten.get(), new ArrayList<>(failedDocumentIds), Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    @Override
+    public void close() throws ExecutionException, InterruptedException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        bulkWriter.close();
+        awaitOutstandingWrites();
+    }
+
+    private void awaitOutstandingWrites() throws InterruptedException {
+        outstandingWrites.acquire(maxOutstandingWrites);
+        outstandingWrites.release(maxOutstandingWrites);
+    }
+}
@@ -3,16 +3,27 @@ package co.cmatts.gcp.firestore;
 import co.cmatts.gcp.firestore.model.Fact;
 import co.cmatts.gcp.firestore.model.FirestoreMappedBean;
 import co.cmatts.gcp.firestore.model.Person;
+import co.cmatts.gcp.firestore.model.PersonSummary;
 import co.cmatts.gcp.firestore.model.Siblings;
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
 import com.google.cloud.NoCredentials;
 import com.google.cloud.firestore.*;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
@@ -21,12 +32,31 @@ import static java.util.stream.Collectors.toList;
 
 public class FirestoreRepository {
     private static final String COLLECTION_NAME_PREFIX = "firestore.example.";
-    private static final int BATCH_SIZE = 25; // supports upto 500 operations
+    static final int BATCH_SIZE = 25; // supports upto 500 operations
+    public static final int MAX_BATCH_SIZE = 500;
+    private static final int MAX_IN_VALUES = 30;
 
     private static Firestore client;
+    private static FirestoreCollections collections;
 
+    private final Cache<String, Person> personCache;
+    private final AtomicLong cacheGeneration = new AtomicLong();
 
-    private Firestore getFirestoreClient() {
+    public FirestoreRepository() {
+        getFirestoreCollections();
+        personCache = null;
+    }
+
+    public FirestoreRepository(CacheConfig cacheConfig) {
+        getFirestoreCollections();
+        personCache = CacheBuilder.newBuilder()
+                .maximumSize(cacheConfig.getMaximumSize())
+                .expireAfterWrite(cacheConfig.getTimeToLive())
+                .recordStats()
+                .build();
+    }
+
+    Firestore getFirestoreClient() {
         if (client != null) {
             return client;
         }
@@ -44,18 +74,76 @@ public class FirestoreRepository {
 
         client = builder.build()
                 .getService();
+        collections = null;
         return client;
     }
 
-    private CollectionReference getFirestoreCollection(Class<? extends FirestoreMappedBean> collectionClass) {
-        String collectionName;
-        try {
-            FirestoreMappedBean instance = collectionClass.getDeclaredConstructor().newInstance();
-            collectionName = COLLECTION_NAME_PREFIX + instance.tableName();
-        } catch (Exception e) {
-            throw new IllegalArgumentException("getFirestoreCollection expects a FirestoreMappedBean");
+    static void resetFirestoreClient() {
+        client = null;
+        collections = null;
+    }
+
+    private FirestoreCollections getFirestoreCollections() {
+        if (collections != null) {
+            return collections;
+        }
+
+        collections = new FirestoreCollections(getFirestoreClient(), COLLECTION_NAME_PREFIX, asList(Person.class, Fact.class));
+        return collections;
+    }
+
+    CollectionReference getFirestoreCollection(Class<? extends FirestoreMappedBean> collectionClass) {
+        return getFirestoreCollections().get(collectionClass);
+    }
+
+    public Optional<CacheStats> personCacheStats() {
+        return Optional.ofNullable(personCache).map(Cache::stats);
+    }
+
+    long cacheGeneration() {
+        return cacheGeneration.get();
+    }
+
+    void invalidateCachedEntities(Collection<? extends FirestoreMappedBean> entities) {
+        if (personCache == null) {
+            return;
+        }
+        synchronized (personCache) {
+            cacheGeneration.incrementAndGet();
+            entities.stream()
+                    .filter(Person.class::isInstance)
+                    .forEach(entity -> personCache.invalidate(entity.getId()));
+        }
+    }
+
+    void invalidateCachedEntities() {
+        if (personCache == null) {
+            return;
+        }
+        synchronized (personCache) {
+            cacheGeneration.incrementAndGet();
+            personCache.invalidateAll();
+        }
+    }
+
+    Person cachePerson(Person person, long readGeneration) {
+        if (personCache == null) {
+            return person;
+        }
+        // a write that completed after the read started may have been missed, so drop the fill
+        synchronized (personCache) {
+            if (cacheGeneration.get() == readGeneration) {
+                personCache.put(person.getId(), person.toBuilder().build());
+            }
+        }
+        return person;
+    }
+
+    Optional<Person> findCachedPerson(String id) {
+        if (personCache == null) {
+            return Optional.empty();
         }
-        return getFirestoreClient().collection(collectionName);
+        return Optional.ofNullable(personCache.getIfPresent(id)).map(p -> p.toBuilder().build());
     }
 
     public Optional<Person> findPerson(String id) throws ExecutionException, InterruptedException {
@@ -63,12 +151,18 @@ public class FirestoreRepository {
             return Optional.empty();
         }
 
+        Optional<Person> cached = findCachedPerson(id);
+        if (cached.isPresent()) {
+            return cached;
+        }
+
+        long readGeneration = cacheGeneration();
         DocumentReference result = getFirestoreCollection(Person.class).document(id);
 
         ApiFuture<DocumentSnapshot> future = result.get();
         DocumentSnapshot document = future.get();
         if (document.exists()) {
-            return Optional.of(document.toObject(Person.class));
+            return Optional.of(cachePerson(document.toObject(Person.class), readGeneration));
         }
         return Optional.empty();
     }
@@ -90,11 +184,40 @@ public class FirestoreRepository {
             return emptyList();
         }
 
+        return queryByAttribute(beanClass, attrName, id)
+                .get()
+                .toObjects(beanClass);
+    }
+
+    public List<PersonSummary> findPersonSummariesByFather(String id) throws ExecutionException, InterruptedException {
+        return findProjectionsByAttribute(Person.class, PersonSummary.class, "fatherId", id, PersonSummary.FIELDS);
+    }
+
+    public List<PersonSummary> findPersonSummariesByMother(String id) throws ExecutionException, InterruptedException {
+        return findProjectionsByAttribute(Person.class, PersonSummary.class, "motherId", id, PersonSummary.FIELDS);
+    }
+
+    public <T> List<T> findProjectionsByAttribute(Class<? extends FirestoreMappedBean> beanClass, Class<T> viewClass, String attrName, String id, String... fields) throws ExecutionException, InterruptedException {
+        if (id == null) {
+            return emptyList();
+        }
+
         return getFirestoreCollection(beanClass)
                 .whereEqualTo(attrName, id)
+                .select(fields)
                 .get()
                 .get()
-                .toObjects(beanClass);
+                .toObjects(viewClass);
+    }
+
+    ApiFuture<QuerySnapshot> queryByAttribute(Class<? extends FirestoreMappedBean> beanClass, String attrName, String id) {
+        if (id == null) {
+            return ApiFutures.immediateFuture(null);
+        }
+
+        return getFirestoreCollection(beanClass)
+                .whereEqualTo(attrName, id)
+                .get();
     }
 
     public Siblings findSiblings(String id) throws ExecutionException, InterruptedException {
@@ -104,14 +227,20 @@ public class FirestoreRepository {
         }
         Person person = p.get();
 
+        ApiFuture<QuerySnapshot> byFather = queryByAttribute(Person.class, "fatherId", person.getFatherId());
+        ApiFuture<QuerySnapshot> byMother = queryByAttribute(Person.class, "motherId", person.getMotherId());
+
         Set<Person> allSiblings = Stream
-                .concat(findPersonByFather(person.getFatherId()).stream(),
-                        findPersonByMother(person.getMotherId()).stream())
+                .concat(toPeople(byFather.get()).stream(), toPeople(byMother.get()).stream())
                 .collect(Collectors.toSet());
 
         return new Siblings(person, allSiblings, extractParents(allSiblings));
     }
 
+    private List<Person> toPeople(QuerySnapshot snapshot) {
+        return snapshot == null ? emptyList() : snapshot.toObjects(Person.class);
+    }
+
     private List<Person> extractParents(Set<Person> allSiblings) throws ExecutionException, InterruptedException {
         List<String> parentIds = allSiblings.stream()
                 .map(s -> asList(s.getFatherId(), s.getMotherId()))
@@ -120,39 +249,224 @@ public class FirestoreRepository {
                 .distinct()
                 .toList();
 
-        List<Person> parents = new ArrayList<>();
-        for(String parentId : parentIds) {
-            parents.add(findPerson(parentId).get());
+        return findPeopleByIds(parentIds);
+    }
+
+    private List<Person> findPeopleByIds(Collection<String> ids) throws ExecutionException, InterruptedException {
+        List<Person> people = new ArrayList<>();
+        List<DocumentReference> missingRefs = new ArrayList<>();
+        for (String id : ids) {
+            findCachedPerson(id).ifPresentOrElse(people::add,
+                    () -> missingRefs.add(getFirestoreCollection(Person.class).document(id)));
+        }
+
+        if (!missingRefs.isEmpty()) {
+            long readGeneration = cacheGeneration();
+            getFirestoreClient().getAll(missingRefs.toArray(new DocumentReference[0])).get().stream()
+                    .filter(DocumentSnapshot::exists)
+                    .map(d -> cachePerson(d.toObject(Person.class), readGeneration))
+                    .forEach(people::add);
         }
-        return parents.stream()
+
+        return people.stream()
                 .sorted(Comparator.comparing(Person::getId))
                 .collect(toList());
     }
 
+    public List<List<Person>> findAncestors(String id, int maxDepth) throws ExecutionException, InterruptedException {
+        validateDepth(maxDepth);
+        Optional<Person> person = findPerson(id);
+        if (person.isEmpty()) {
+            return emptyList();
+        }
+
+        Set<String> visited = new HashSet<>(Set.of(id));
+        List<List<Person>> generations = new ArrayList<>();
+        List<Person> frontier = List.of(person.get());
+        while (generations.size() < maxDepth) {
+            List<String> parentIds = frontier.stream()
+                    .flatMap(p -> Stream.of(p.getFatherId(), p.getMotherId()))
+                    .filter(Objects::nonNull)
+                    .filter(visited::add)
+                    .toList();
+            if (parentIds.isEmpty()) {
+                break;
+            }
+
+            frontier = findPeopleByIds(parentIds);
+            generations.add(frontier);
+        }
+        return generations;
+    }
+
+    public List<List<Person>> findDescendants(String id, int maxDepth) throws ExecutionException, InterruptedException {
+        validateDepth(maxDepth);
+        if (id == null) {
+            return emptyList();
+        }
+
+        Set<String> visited = new HashSet<>(Set.of(id));
+        List<List<Person>> generations = new ArrayList<>();
+        List<String> frontier = List.of(id);
+        while (generations.size() < maxDepth) {
+            List<Person> children = findChildren(frontier).stream()
+                    .filter(child -> visited.add(child.getId()))
+                    .sorted(Comparator.comparing(Person::getId))
+                    .collect(toList());
+            if (children.isEmpty()) {
+                break;
+            }
+
+            generations.add(children);
+            frontier = children.stream().map(Person::getId).toList();
+        }
+        return generations;
+    }
+
+    private List<Person> findChildren(List<String> parentIds) throws ExecutionException, InterruptedException {
+        List<ApiFuture<QuerySnapshot>> queries = new ArrayList<>();
+        for (List<String> chunk : Lists.partition(parentIds, MAX_IN_VALUES)) {
+            queries.add(getFirestoreCollection(Person.class).whereIn("fatherId", new ArrayList<>(chunk)).get());
+            queries.add(getFirestoreCollection(Person.class).whereIn("motherId", new ArrayList<>(chunk)).get());
+        }
+
+        List<Person> children = new ArrayList<>();
+        for (QuerySnapshot snapshot : ApiFutures.allAsList(queries).get()) {
+            children.addAll(snapshot.toObjects(Person.class));
+        }
+        return children;
+    }
+
+    private void validateDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Traversal expects a depth of at least one generation");
+        }
+    }
+
     public List<Person> findPeople() throws ExecutionException, InterruptedException {
-        return getFirestoreCollection(Person.class)
-                .orderBy("name")
+        return peopleByName()
                 .get()
                 .get()
                 .toObjects(Person.class);
     }
 
+    Query peopleByName() {
+        return getFirestoreCollection(Person.class).orderBy("name");
+    }
+
+    public Stream<Person> streamPeople(int pageSize) {
+        Query query = peopleByName();
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(new PagedQueryIterator<>(query, Person.class, pageSize), Spliterator.ORDERED | Spliterator.NONNULL),
+                false);
+    }
+
     @SafeVarargs
     public final void load(List<? extends FirestoreMappedBean>... dataLists) throws ExecutionException, InterruptedException {
         List<FirestoreMappedBean> allData = Stream.of(dataLists).flatMap(List::stream).collect(toList());
         List<List<FirestoreMappedBean>> batches = Lists.partition(allData, BATCH_SIZE);
-        for (List<FirestoreMappedBean> b : batches) {
-            loadBatch(b);
+        try {
+            for (List<FirestoreMappedBean> b : batches) {
+                loadBatch(b);
+            }
+        } finally {
+            invalidateCachedEntities();
         }
     }
 
     private void loadBatch(List<FirestoreMappedBean> data) throws ExecutionException, InterruptedException {
-        WriteBatch batch = getFirestoreClient().batch();
+        ApiFuture<List<WriteResult>> future = newWriteBatch(data).commit();
+        future.get();
+    }
 
+    WriteBatch newWriteBatch(List<FirestoreMappedBean> data) {
+        WriteBatch batch = getFirestoreClient().batch();
         data.forEach(entity -> batch.set(getFirestoreCollection(entity.getClass()).document(entity.getId()), entity));
+        return batch;
+    }
 
-        ApiFuture<List<WriteResult>> future = batch.commit();
-        future.get();
+    @SafeVarargs
+    public final BulkLoadResult bulkLoad(int batchSize, int maxConcurrentBatches, List<? extends FirestoreMappedBean>... dataLists) throws InterruptedException {
+        if (batchSize < 1 || batchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("bulkLoad expects a batch size between 1 and " + MAX_BATCH_SIZE);
+        }
+        if (maxConcurrentBatches < 1) {
+            throw new IllegalArgumentException("bulkLoad expects at least one concurrent batch");
+        }
+
+        List<FirestoreMappedBean> allData = Stream.of(dataLists).flatMap(List::stream).collect(toList());
+        List<BatchFailure> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong documentsLoaded = new AtomicLong();
+        Semaphore inFlight = new Semaphore(maxConcurrentBatches);
+        long start = System.nanoTime();
+
+        List<List<FirestoreMappedBean>> batches = Lists.partition(allData, batchSize);
+        for (int i = 0; i < batches.size(); i++) {
+            int batchIndex = i;
+            List<FirestoreMappedBean> batch = batches.get(i);
+            inFlight.acquire();
+            try {
+                ApiFutures.addCallback(newWriteBatch(batch).commit(), new ApiFutureCallback<>() {
+                    @Override
+                    public void onSuccess(List<WriteResult> result) {
+                        documentsLoaded.addAndGet(batch.size());
+                        inFlight.release();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        failures.add(batchFailure(batchIndex, batch, t));
+                        inFlight.release();
+                    }
+                }, MoreExecutors.directExecutor());
+            } catch (RuntimeException e) {
+                failures.add(batchFailure(batchIndex, batch, e));
+                inFlight.release();
+            }
+        }
+
+        inFlight.acquire(maxConcurrentBatches);
+        inFlight.release(maxConcurrentBatches);
+        invalidateCachedEntities();
+
+        List<BatchFailure> orderedFailures = new ArrayList<>(failures);
+        orderedFailures.sort(Comparator.comparingInt(BatchFailure::getBatchIndex));
+        return new BulkLoadResult(documentsLoaded.get(), orderedFailures, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private BatchFailure batchFailure(int batchIndex, List<FirestoreMappedBean> batch, Throwable cause) {
+        return new BatchFailure(batchIndex, batch.stream().map(FirestoreMappedBean::getId).collect(toList()), cause);
+    }
+
+    public FirestoreIngester newIngester(IngestConfig config) {
+        BulkWriterOptions options = BulkWriterOptions.builder()
+                .setThrottlingEnabled(config.isThrottlingEnabled())
+                .setInitialOpsPerSecond(config.getInitialOpsPerSecond())
+                .setMaxOpsPerSecond(config.getMaxOpsPerSecond())
+                .build();
+
+        return new FirestoreIngester(
+                getFirestoreClient().bulkWriter(options),
+                entity -> getFirestoreCollection(entity.getClass()).document(entity.getId()),
+                config);
+    }
+
+    public IngestResult ingest(Stream<? extends FirestoreMappedBean> data) throws ExecutionException, InterruptedException {
+        try (Stream<? extends FirestoreMappedBean> s = data) {
+            return ingest(s.iterator(), IngestConfig.defaults());
+        }
+    }
+
+    public IngestResult ingest(Iterator<? extends FirestoreMappedBean> data, IngestConfig config) throws ExecutionException, InterruptedException {
+        FirestoreIngester ingester = newIngester(config);
+        try (ingester) {
+            while (data.hasNext()) {
+                ingester.write(data.next());
+            }
+        } finally {
+            invalidateCachedEntities();
+        }
+        return ingester.getResult();
     }
 
     public void updateEntities(List<? extends FirestoreMappedBean> entities) throws ExecutionException, InterruptedException {
@@ -165,6 +479,10 @@ public class FirestoreRepository {
                             }
                             return null;
                         });
-        futureTransaction.get();
+        try {
+            futureTransaction.get();
+        } finally {
+            invalidateCachedEntities(entities);
+        }
     }
 }
@@ -0,0 +1,23 @@
+package co.cmatts.gcp.firestore;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class IngestConfig {
+    @Builder.Default
+    int maxOutstandingWrites = 1000;
+    @Builder.Default
+    boolean throttlingEnabled = true;
+    @Builder.Default
+    int initialOpsPerSecond = 500;
+    @Builder.Default
+    int maxOpsPerSecond = 10000;
+    @Builder.Default
+    int maxAttempts = 5;
+
+    public static IngestConfig defaults() {
+        return IngestConfig.builder().build();
+    }
+}
@@ -0,0 +1,25 @@
+package co.cmatts.gcp.firestore;
+
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.List;
+
+@Value
+public class IngestResult {
+    long documentsWritten;
+    List<String> failedDocumentIds;
+    Duration elapsed;
+
+    public boolean isSuccessful() {
+        return failedDocumentIds.isEmpty();
+    }
+
+    public double documentsPerSecond() {
+        long nanos = elapsed.toNanos();
+        if (nanos == 0) {
+            return 0;
+        }
+        return documentsWritten * 1_000_000_000d / nanos;
+    }
+}
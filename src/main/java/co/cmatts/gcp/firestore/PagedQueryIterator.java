@@ -0,0 +1,68 @@
+package co.cmatts.gcp.firestore;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+
+class PagedQueryIterator<T> implements Iterator<T> {
+    private final Query query;
+    private final Class<T> beanClass;
+    private final int pageSize;
+    private ApiFuture<QuerySnapshot> nextPage;
+    private Iterator<QueryDocumentSnapshot> currentPage = Collections.emptyIterator();
+
+    PagedQueryIterator(Query query, Class<T> beanClass, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("PagedQueryIterator expects a page size of at least one");
+        }
+        this.query = query.limit(pageSize);
+        this.beanClass = beanClass;
+        this.pageSize = pageSize;
+        this.nextPage = this.query.get();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!currentPage.hasNext()) {
+            if (nextPage == null) {
+                return false;
+            }
+
+            List<QueryDocumentSnapshot> documents = awaitNextPage().getDocuments();
+            nextPage = documents.size() < pageSize
+                    ? null
+                    : query.startAfter(documents.get(documents.size() - 1)).get();
+            currentPage = documents.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next().toObject(beanClass);
+    }
+
+    private QuerySnapshot awaitNextPage() {
+        try {
+            return nextPage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the next page", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to read the next page", e.getCause());
+        }
+    }
+}
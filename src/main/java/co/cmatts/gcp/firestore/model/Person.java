@@ -3,7 +3,7 @@ package co.cmatts.gcp.firestore.model;
 import lombok.*;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @EqualsAndHashCode(of = "id")
 @NoArgsConstructor
 @AllArgsConstructor
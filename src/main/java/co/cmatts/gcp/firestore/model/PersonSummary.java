@@ -0,0 +1,17 @@
+package co.cmatts.gcp.firestore.model;
+
+import lombok.*;
+
+@Data
+@Builder
+@EqualsAndHashCode(of = "id")
+@NoArgsConstructor
+@AllArgsConstructor
+public class PersonSummary {
+    public static final String[] FIELDS = {"id", "yearOfBirth", "fatherId", "motherId"};
+
+    private String id;
+    private Integer yearOfBirth;
+    private String fatherId;
+    private String motherId;
+}
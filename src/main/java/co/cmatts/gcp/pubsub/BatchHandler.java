@@ -0,0 +1,8 @@
+package co.cmatts.gcp.pubsub;
+
+import java.util.List;
+
+@FunctionalInterface
+public interface BatchHandler {
+    void handle(List<PulledMessage> messages) throws Exception;
+}
@@ -0,0 +1,23 @@
+package co.cmatts.gcp.pubsub;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+@Value
+@Builder
+public class ChannelPoolConfig {
+    @Builder.Default
+    int poolSize = 2;
+    @Builder.Default
+    Duration keepAliveTime = Duration.ofSeconds(30);
+    @Builder.Default
+    Duration keepAliveTimeout = Duration.ofSeconds(10);
+    @Builder.Default
+    int maxInboundMessageSize = 20 * 1024 * 1024;
+
+    public static ChannelPoolConfig defaults() {
+        return ChannelPoolConfig.builder().build();
+    }
+}
@@ -0,0 +1,30 @@
+package co.cmatts.gcp.pubsub;
+
+import lombok.Builder;
+import lombok.Value;
+
+import static java.util.Objects.isNull;
+
+@Value
+public class DeadLetterConfig {
+    static final int MIN_DELIVERY_ATTEMPTS = 5;
+    static final int MAX_DELIVERY_ATTEMPTS = 100;
+
+    String topicId;
+    int maxDeliveryAttempts;
+
+    @Builder
+    private DeadLetterConfig(String topicId, Integer maxDeliveryAttempts) {
+        if (isNull(topicId) || topicId.isBlank()) {
+            throw new IllegalArgumentException("A dead letter topic is required");
+        }
+        int attempts = isNull(maxDeliveryAttempts) ? MIN_DELIVERY_ATTEMPTS : maxDeliveryAttempts;
+        // the same limits the server applies to a subscription dead letter policy
+        if (attempts < MIN_DELIVERY_ATTEMPTS || attempts > MAX_DELIVERY_ATTEMPTS) {
+            throw new IllegalArgumentException("maxDeliveryAttempts must be between " + MIN_DELIVERY_ATTEMPTS
+                    + " and " + MAX_DELIVERY_ATTEMPTS + " but was " + attempts);
+        }
+        this.topicId = topicId;
+        this.maxDeliveryAttempts = attempts;
+    }
+}
@@ -0,0 +1,8 @@
+package co.cmatts.gcp.pubsub;
+
+import com.google.pubsub.v1.PubsubMessage;
+
+@FunctionalInterface
+public interface MessageHandler {
+    boolean handle(PubsubMessage message) throws Exception;
+}
@@ -0,0 +1,50 @@
+package co.cmatts.gcp.pubsub;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class OrderingKeyMetrics {
+    private final AtomicLong inFlight = new AtomicLong();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    void recordStart() {
+        inFlight.incrementAndGet();
+    }
+
+    void recordSuccess(long latencyNanos) {
+        inFlight.decrementAndGet();
+        published.increment();
+        totalLatencyNanos.add(latencyNanos);
+        maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    void recordFailure() {
+        inFlight.decrementAndGet();
+        failed.increment();
+    }
+
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public Duration getAverageLatency() {
+        long count = published.sum();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(totalLatencyNanos.sum() / count);
+    }
+
+    public Duration getMaxLatency() {
+        return Duration.ofNanos(maxLatencyNanos.get());
+    }
+}
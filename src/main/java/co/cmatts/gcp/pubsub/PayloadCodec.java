@@ -0,0 +1,79 @@
+package co.cmatts.gcp.pubsub;
+
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+class PayloadCodec {
+    static final String CONTENT_ENCODING_ATTRIBUTE = "content-encoding";
+    static final String GZIP_ENCODING = "gzip";
+    static final int MAX_MESSAGE_BYTES = 10_000_000;
+    static final int MAX_DECOMPRESSED_BYTES = MAX_MESSAGE_BYTES * 10;
+
+    private PayloadCodec() {
+    }
+
+    static PubsubMessage.Builder encode(ByteString data, PublisherConfig config) {
+        PubsubMessage.Builder builder = PubsubMessage.newBuilder().setData(data);
+        if (config.getCompression() == PayloadCompression.GZIP && data.size() >= config.getCompressionThreshold()) {
+            ByteString compressed = gzip(data);
+            if (compressed.size() < data.size()) {
+                builder.setData(compressed).putAttributes(CONTENT_ENCODING_ATTRIBUTE, GZIP_ENCODING);
+            }
+        }
+
+        int size = builder.getData().size();
+        if (size > MAX_MESSAGE_BYTES) {
+            throw new IllegalArgumentException("Message payload of " + size + " bytes"
+                    + (builder.containsAttributes(CONTENT_ENCODING_ATTRIBUTE) ? " after compression" : "")
+                    + " exceeds the Pub/Sub limit of " + MAX_MESSAGE_BYTES + " bytes");
+        }
+        return builder;
+    }
+
+    static PubsubMessage decode(PubsubMessage message) {
+        if (!GZIP_ENCODING.equals(message.getAttributesOrDefault(CONTENT_ENCODING_ATTRIBUTE, null))) {
+            return message;
+        }
+        return message.toBuilder()
+                .setData(gunzip(message.getData()))
+                .removeAttributes(CONTENT_ENCODING_ATTRIBUTE)
+                .build();
+    }
+
+    static ByteString gzip(ByteString data) {
+        ByteString.Output output = ByteString.newOutput(Math.max(data.size() / 4, 64));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            data.writeTo(gzip);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteString();
+    }
+
+    static ByteString gunzip(ByteString data) {
+        return gunzip(data, MAX_DECOMPRESSED_BYTES);
+    }
+
+    static ByteString gunzip(ByteString data, int maxDecompressedBytes) {
+        ByteString.Output output = ByteString.newOutput(Math.min(data.size() * 4, maxDecompressedBytes));
+        byte[] buffer = new byte[8192];
+        try (InputStream gunzip = new GZIPInputStream(data.newInput())) {
+            int read;
+            while ((read = gunzip.read(buffer)) > 0) {
+                if (output.size() + read > maxDecompressedBytes) {
+                    throw new IOException("Decompressed payload exceeds the limit of " + maxDecompressedBytes + " bytes");
+                }
+                output.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteString();
+    }
+}
@@ -0,0 +1,6 @@
+package co.cmatts.gcp.pubsub;
+
+public enum PayloadCompression {
+    NONE,
+    GZIP
+}
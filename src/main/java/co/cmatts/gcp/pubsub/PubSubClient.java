@@ -1,51 +1,128 @@
 package co.cmatts.gcp.pubsub;
 
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.batching.BatchingSettings;
+import com.google.api.gax.batching.FlowControlSettings;
 import com.google.api.gax.core.CredentialsProvider;
+import com.google.api.gax.core.InstantiatingExecutorProvider;
 import com.google.api.gax.core.NoCredentialsProvider;
-import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.grpc.ChannelPoolSettings;
+import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
 import com.google.api.gax.rpc.ClientSettings;
 import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.TransportChannel;
 import com.google.api.gax.rpc.TransportChannelProvider;
 import com.google.cloud.pubsub.v1.*;
 import com.google.cloud.pubsub.v1.stub.GrpcSubscriberStub;
 import com.google.cloud.pubsub.v1.stub.SubscriberStub;
 import com.google.cloud.pubsub.v1.stub.SubscriberStubSettings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Timestamp;
+import com.google.protobuf.UnsafeByteOperations;
 import com.google.pubsub.v1.*;
-import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import lombok.Value;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
 
 public class PubSubClient {
+    private static final Logger LOGGER = Logger.getLogger(PubSubClient.class.getName());
 
     private static final int MAX_MESSAGES = 1024;
-    private static ManagedChannel localChannel;
-    private static CredentialsProvider localCredentials;
+    private static final int MAX_ACK_IDS_PER_REQUEST = 2500;
+    static final String DEAD_LETTER_SOURCE_ATTRIBUTE = "dead-letter-source-subscription";
+    static final String DEAD_LETTER_ATTEMPTS_ATTRIBUTE = "dead-letter-delivery-attempts";
+    private static final int LOCAL_DELIVERY_ATTEMPTS_LIMIT = 100_000;
+    private static final Duration LOCAL_DELIVERY_ATTEMPTS_EXPIRY = Duration.ofHours(1);
+    private static ChannelPoolConfig channelPoolConfig = ChannelPoolConfig.defaults();
+    private static TransportChannel transportChannel;
+    private static CredentialsProvider credentialsProvider;
+    private static TopicAdminClient topicAdminClient;
+    private static SubscriptionAdminClient subscriptionAdminClient;
+    private static SubscriberStub subscriberStub;
+    private static ScheduledExecutorService leaseExtender;
+    private static final Map<String, Publisher> publishers = new ConcurrentHashMap<>();
+    private static final Map<String, Publisher> orderedPublishers = new ConcurrentHashMap<>();
+    private static final int MAX_ORDERING_KEY_METRICS = 10_000;
+    private static final Duration ORDERING_KEY_METRICS_IDLE_EXPIRY = Duration.ofHours(1);
+    private static final Cache<TopicOrderingKey, OrderingKeyMetrics> orderingKeyMetrics = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ORDERING_KEY_METRICS)
+            .expireAfterAccess(ORDERING_KEY_METRICS_IDLE_EXPIRY)
+            .build();
+    private static final Map<String, PublisherConfig> publisherConfigs = new ConcurrentHashMap<>();
+    private static final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
 
     public static void createTopic(String topicId) throws IOException {
-        try (TopicAdminClient topicAdminClient = TopicAdminClient.create(getTopicAdminSettings())) {
-            TopicName topicName = TopicName.of(System.getProperty("local.project"), topicId);
-            topicAdminClient.createTopic(topicName);
-        }
+        TopicName topicName = TopicName.of(System.getProperty("local.project"), topicId);
+        getTopicAdminClient().createTopic(topicName);
     }
 
     public static void createSubscription(String topicId, String subscriptionId) throws IOException {
-        SubscriptionAdminClient subscriptionAdminClient = SubscriptionAdminClient.create(getSubscriptionAdminSettings());
-        SubscriptionName subscriptionName = SubscriptionName.of(System.getProperty("local.project"), subscriptionId);
-        subscriptionAdminClient.createSubscription(
-                subscriptionName,
-                TopicName.of(System.getProperty("local.project"), topicId),
-                PushConfig.getDefaultInstance(),
-                10
-        );
+        createSubscription(topicId, subscriptionId, SubscriptionConfig.defaults());
+    }
+
+    public static void createSubscription(String topicId, String subscriptionId, SubscriptionConfig config) throws IOException {
+        Subscription.Builder subscription = Subscription.newBuilder()
+                .setName(SubscriptionName.of(System.getProperty("local.project"), subscriptionId).toString())
+                .setTopic(TopicName.of(System.getProperty("local.project"), topicId).toString())
+                .setPushConfig(PushConfig.getDefaultInstance())
+                .setAckDeadlineSeconds(config.getAckDeadlineSeconds())
+                .setEnableMessageOrdering(config.isEnableMessageOrdering());
+
+        if (nonNull(config.getDeadLetter())) {
+            subscription.setDeadLetterPolicy(DeadLetterPolicy.newBuilder()
+                    .setDeadLetterTopic(TopicName.of(System.getProperty("local.project"), config.getDeadLetter().getTopicId()).toString())
+                    .setMaxDeliveryAttempts(config.getDeadLetter().getMaxDeliveryAttempts()));
+        }
+
+        if (nonNull(config.getMinimumBackoff()) || nonNull(config.getMaximumBackoff())) {
+            RetryPolicy.Builder retryPolicy = RetryPolicy.newBuilder();
+            if (nonNull(config.getMinimumBackoff())) {
+                retryPolicy.setMinimumBackoff(toProtoDuration(config.getMinimumBackoff()));
+            }
+            if (nonNull(config.getMaximumBackoff())) {
+                retryPolicy.setMaximumBackoff(toProtoDuration(config.getMaximumBackoff()));
+            }
+            subscription.setRetryPolicy(retryPolicy);
+        }
+
+        getSubscriptionAdminClient().createSubscription(subscription.build());
+    }
+
+    private static com.google.protobuf.Duration toProtoDuration(Duration duration) {
+        return com.google.protobuf.Duration.newBuilder()
+                .setSeconds(duration.getSeconds())
+                .setNanos(duration.getNano())
+                .build();
     }
 
     private static TopicAdminSettings getTopicAdminSettings() throws IOException {
@@ -62,108 +139,540 @@ public class PubSubClient {
         return builder.build();
     }
 
-    private static TransportChannelProvider getLocalTransportChannelProvider() {
-        return FixedTransportChannelProvider.create(
-                GrpcTransportChannel.create(getLocalChannel())
-        );
+    // Applies to clients created after the call, so configure the pool before first use
+    public static void configureChannelPool(ChannelPoolConfig config) {
+        if (config.getPoolSize() < 1) {
+            throw new IllegalArgumentException("configureChannelPool expects at least one channel");
+        }
+        shutdown();
+        synchronized (PubSubClient.class) {
+            channelPoolConfig = config;
+        }
+    }
+
+    private static synchronized TopicAdminClient getTopicAdminClient() throws IOException {
+        if (nonNull(topicAdminClient)) {
+            return topicAdminClient;
+        }
+        topicAdminClient = TopicAdminClient.create(getTopicAdminSettings());
+        return topicAdminClient;
+    }
+
+    private static synchronized SubscriptionAdminClient getSubscriptionAdminClient() throws IOException {
+        if (nonNull(subscriptionAdminClient)) {
+            return subscriptionAdminClient;
+        }
+        subscriptionAdminClient = SubscriptionAdminClient.create(getSubscriptionAdminSettings());
+        return subscriptionAdminClient;
     }
 
-    private static ManagedChannel getLocalChannel() {
-        if (nonNull(localChannel)) {
-            return localChannel;
+    private static TransportChannelProvider getTransportChannelProvider() {
+        return FixedTransportChannelProvider.create(getTransportChannel());
+    }
+
+    // A single gax channel pool shared by every client, publisher and subscriber
+    static synchronized TransportChannel getTransportChannel() {
+        if (nonNull(transportChannel)) {
+            return transportChannel;
         }
         String target = System.getProperty("local.pubsub.url");
+        InstantiatingGrpcChannelProvider.Builder builder = InstantiatingGrpcChannelProvider.newBuilder()
+                .setEndpoint(nonNull(target) ? target : TopicAdminSettings.getDefaultEndpoint())
+                .setChannelPoolSettings(ChannelPoolSettings.staticallySized(channelPoolConfig.getPoolSize()))
+                .setKeepAliveTime(org.threeten.bp.Duration.ofNanos(channelPoolConfig.getKeepAliveTime().toNanos()))
+                .setKeepAliveTimeout(org.threeten.bp.Duration.ofNanos(channelPoolConfig.getKeepAliveTimeout().toNanos()))
+                .setMaxInboundMessageSize(channelPoolConfig.getMaxInboundMessageSize());
         if (nonNull(target)) {
-            localChannel = ManagedChannelBuilder.forTarget(target).usePlaintext().build();
-        } else {
-            throw new UnsupportedOperationException("Not implemented");
+            builder.setChannelConfigurator(ManagedChannelBuilder::usePlaintext);
         }
 
-        return localChannel;
+        try {
+            transportChannel = builder.build()
+                    .withHeaders(Collections.emptyMap())
+                    .getTransportChannel();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return transportChannel;
     }
 
-    private static CredentialsProvider getLocalCredentialsProvider() {
-        if (nonNull(localCredentials)) {
-            return localCredentials;
+    private static synchronized CredentialsProvider getCredentialsProvider() {
+        if (nonNull(credentialsProvider)) {
+            return credentialsProvider;
+        }
+        if (nonNull(System.getProperty("local.pubsub.url"))) {
+            credentialsProvider = NoCredentialsProvider.create();
+        } else {
+            credentialsProvider = TopicAdminSettings.defaultCredentialsProviderBuilder().build();
         }
-        localCredentials = NoCredentialsProvider.create();
 
-        return localCredentials;
+        return credentialsProvider;
     }
 
     private static <T extends ClientSettings<T>, B extends ClientSettings.Builder<T, B>> void configureClientSettings(ClientSettings.Builder<T, B> builder) {
-        String target = System.getProperty("local.pubsub.url");
-        if (nonNull(target)) {
-            builder
-                .setTransportChannelProvider(getLocalTransportChannelProvider())
-                .setCredentialsProvider(getLocalCredentialsProvider());
-        }
+        builder
+            .setTransportChannelProvider(getTransportChannelProvider())
+            .setCredentialsProvider(getCredentialsProvider());
     }
 
     private static void configurePublisherSettings(Publisher.Builder builder) {
-        String target = System.getProperty("local.pubsub.url");
-        if (nonNull(target)) {
-            builder
-                .setChannelProvider(getLocalTransportChannelProvider())
-                .setCredentialsProvider(getLocalCredentialsProvider());
-        }
+        builder
+            .setChannelProvider(getTransportChannelProvider())
+            .setCredentialsProvider(getCredentialsProvider());
+    }
+
+    private static void configureSubscriberSettings(Subscriber.Builder builder) {
+        builder
+            .setChannelProvider(getTransportChannelProvider())
+            .setCredentialsProvider(getCredentialsProvider());
     }
 
     private static void configureSubscriberStubSettings(SubscriberStubSettings.Builder builder) {
-        String target = System.getProperty("local.pubsub.url");
-        if (nonNull(target)) {
-            builder
-                .setTransportChannelProvider(getLocalTransportChannelProvider())
-                .setCredentialsProvider(getLocalCredentialsProvider());
+        builder
+            .setTransportChannelProvider(getTransportChannelProvider())
+            .setCredentialsProvider(getCredentialsProvider());
+    }
+
+    static Publisher getPublisher(String topicId) throws IOException {
+        try {
+            return publishers.computeIfAbsent(topicId, t -> createPublisher(t, false));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
     }
 
-    public static void publishMessage(String topicId, String message) throws IOException {
-        Publisher.Builder builder = Publisher.newBuilder(TopicName.of(System.getProperty("local.project"), topicId));
+    private static Publisher getOrderedPublisher(String topicId) throws IOException {
+        try {
+            return orderedPublishers.computeIfAbsent(topicId, t -> createPublisher(t, true));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static void configurePublisher(String topicId, PublisherConfig config) {
+        publisherConfigs.put(topicId, config);
+        Publisher existing = publishers.remove(topicId);
+        if (nonNull(existing)) {
+            existing.shutdown();
+        }
+        Publisher existingOrdered = orderedPublishers.remove(topicId);
+        if (nonNull(existingOrdered)) {
+            existingOrdered.shutdown();
+        }
+    }
+
+    private static Publisher createPublisher(String topicId, boolean enableMessageOrdering) {
+        PublisherConfig config = publisherConfigs.getOrDefault(topicId, PublisherConfig.defaults());
+        Publisher.Builder builder = Publisher.newBuilder(TopicName.of(System.getProperty("local.project"), topicId))
+                .setBatchingSettings(BatchingSettings.newBuilder()
+                        .setElementCountThreshold(config.getElementCountThreshold())
+                        .setRequestByteThreshold(config.getRequestByteThreshold())
+                        .setDelayThreshold(org.threeten.bp.Duration.ofNanos(config.getDelayThreshold().toNanos()))
+                        .setFlowControlSettings(FlowControlSettings.newBuilder()
+                                .setMaxOutstandingElementCount(config.getMaxOutstandingElementCount())
+                                .setMaxOutstandingRequestBytes(config.getMaxOutstandingRequestBytes())
+                                .setLimitExceededBehavior(config.getLimitExceededBehavior())
+                                .build())
+                        .build())
+                .setEnableMessageOrdering(enableMessageOrdering);
         configurePublisherSettings(builder);
-        Publisher publisher = builder.build();
+        try {
+            return builder.build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ApiFuture<String> publishMessage(String topicId, String message) throws IOException {
+        return publishMessage(topicId, ByteString.copyFromUtf8(message));
+    }
+
+    // The buffer is wrapped without copying, so it must not be modified until the returned future completes
+    public static ApiFuture<String> publishMessage(String topicId, ByteBuffer data) throws IOException {
+        return publishMessage(topicId, UnsafeByteOperations.unsafeWrap(data));
+    }
+
+    public static ApiFuture<String> publishMessage(String topicId, ByteString data) throws IOException {
+        PubsubMessage pubsubMessage = encode(topicId, data).build();
+        return getPublisher(topicId).publish(pubsubMessage);
+    }
+
+    private static PubsubMessage.Builder encode(String topicId, ByteString data) {
+        return PayloadCodec.encode(data, publisherConfigs.getOrDefault(topicId, PublisherConfig.defaults()));
+    }
+
+    public static ApiFuture<String> publishOrderedMessage(String topicId, String orderingKey, String message) throws IOException {
+        return publishOrderedMessage(topicId, orderingKey, ByteString.copyFromUtf8(message));
+    }
 
-        PubsubMessage pubsubMessage = PubsubMessage.newBuilder()
-                .setData(ByteString.copyFromUtf8(message))
+    public static ApiFuture<String> publishOrderedMessage(String topicId, String orderingKey, ByteString data) throws IOException {
+        PubsubMessage pubsubMessage = encode(topicId, data)
+                .setOrderingKey(orderingKey)
                 .build();
-        publisher.publish(pubsubMessage);
+
+        OrderingKeyMetrics metrics = orderingKeyMetrics.asMap()
+                .computeIfAbsent(new TopicOrderingKey(topicId, orderingKey), k -> new OrderingKeyMetrics());
+        long start = System.nanoTime();
+        metrics.recordStart();
+        ApiFuture<String> future = getOrderedPublisher(topicId).publish(pubsubMessage);
+        ApiFutures.addCallback(future, new ApiFutureCallback<>() {
+            @Override
+            public void onSuccess(String messageId) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                metrics.recordFailure();
+            }
+        }, MoreExecutors.directExecutor());
+        // record success before the caller sees the message id so the metrics are current when it does
+        return ApiFutures.transform(future, messageId -> {
+            metrics.recordSuccess(System.nanoTime() - start);
+            return messageId;
+        }, MoreExecutors.directExecutor());
     }
 
-    public static List<String> readMessage(String subscriptionId) throws IOException {
+    // After a failed publish the publisher pauses the ordering key until it is resumed
+    public static void resumePublish(String topicId, String orderingKey) {
+        Publisher publisher = orderedPublishers.get(topicId);
+        if (nonNull(publisher)) {
+            publisher.resumePublish(orderingKey);
+        }
+    }
+
+    public static Map<String, OrderingKeyMetrics> orderingKeyMetrics(String topicId) {
+        return orderingKeyMetrics.asMap().entrySet().stream()
+                .filter(entry -> entry.getKey().getTopicId().equals(topicId))
+                .collect(Collectors.toUnmodifiableMap(entry -> entry.getKey().getOrderingKey(), Map.Entry::getValue));
+    }
+
+    @Value
+    private static class TopicOrderingKey {
+        String topicId;
+        String orderingKey;
+    }
+
+    public static List<String> publishMessages(String topicId, Iterable<String> messages) throws IOException, ExecutionException, InterruptedException {
+        Publisher publisher = getPublisher(topicId);
+        List<ApiFuture<String>> futures = new ArrayList<>();
+        for (String message : messages) {
+            futures.add(publisher.publish(encode(topicId, ByteString.copyFromUtf8(message)).build()));
+        }
+        return ApiFutures.allAsList(futures).get();
+    }
+
+    private static synchronized SubscriberStub getSubscriberStub() throws IOException {
+        if (nonNull(subscriberStub)) {
+            return subscriberStub;
+        }
         SubscriberStubSettings.Builder builder = SubscriberStubSettings.newBuilder();
         configureSubscriberStubSettings(builder);
-        SubscriberStubSettings subscriberStubSettings = builder.build();
+        subscriberStub = GrpcSubscriberStub.create(builder.build());
+        return subscriberStub;
+    }
 
-        try (SubscriberStub subscriber = GrpcSubscriberStub.create(subscriberStubSettings)) {
-            PullRequest pullRequest = PullRequest
-                    .newBuilder()
-                    .setMaxMessages(MAX_MESSAGES)
-                    .setSubscription(ProjectSubscriptionName.format(System.getProperty("local.project"), subscriptionId))
-                    .build();
-            PullResponse pullResponse = subscriber.pullCallable().call(pullRequest);
+    private static String subscriptionPath(String subscriptionId) {
+        return ProjectSubscriptionName.format(System.getProperty("local.project"), subscriptionId);
+    }
 
-            return pullResponse.getReceivedMessagesList()
-                    .stream()
-                    .map(m -> m.getMessage().getData().toStringUtf8())
-                    .collect(Collectors.toList());
+    private static List<ReceivedMessage> pull(SubscriberStub subscriber, String subscriptionId, int maxMessages) {
+        PullRequest pullRequest = PullRequest
+                .newBuilder()
+                .setMaxMessages(maxMessages)
+                .setSubscription(subscriptionPath(subscriptionId))
+                .build();
+        return subscriber.pullCallable().call(pullRequest).getReceivedMessagesList();
+    }
+
+    private static List<PulledMessage> pullDecoded(SubscriberStub subscriber, String subscriptionId, int maxMessages) {
+        List<ReceivedMessage> received = pull(subscriber, subscriptionId, maxMessages);
+        List<PulledMessage> messages = new ArrayList<>(received.size());
+        List<String> undecodable = new ArrayList<>();
+        for (ReceivedMessage receivedMessage : received) {
+            try {
+                messages.add(PulledMessage.from(receivedMessage));
+            } catch (UncheckedIOException e) {
+                LOGGER.log(Level.WARNING, "Could not decode message " + receivedMessage.getMessage().getMessageId()
+                        + " on " + subscriptionId + ", returning it for redelivery", e);
+                undecodable.add(receivedMessage.getAckId());
+            }
         }
+        if (!undecodable.isEmpty()) {
+            // nack only the corrupt messages, a dead letter policy on the subscription can then remove them
+            modifyAckDeadline(subscriber, subscriptionId, undecodable, 0);
+        }
+        return messages;
     }
 
-    public static void purgeTopic(String subscriptionId) throws ExecutionException, InterruptedException, IOException {
-        try (SubscriptionAdminClient subscriptionAdminClient = SubscriptionAdminClient.create(getSubscriptionAdminSettings())) {
-            SeekRequest request = SeekRequest.newBuilder()
-                    .setSubscription(SubscriptionName.of(System.getProperty("local.project"), subscriptionId).toString())
-                    .setTime(Timestamp.newBuilder().setSeconds(Integer.MAX_VALUE))
-                    .build();
-            ApiFuture<SeekResponse> future = subscriptionAdminClient.seekCallable().futureCall(request);
-            future.get();
+    public static List<String> readMessage(String subscriptionId) throws IOException {
+        return pullDecoded(getSubscriberStub(), subscriptionId, MAX_MESSAGES)
+                .stream()
+                .map(PulledMessage::getDataAsString)
+                .collect(Collectors.toList());
+    }
+
+    public static List<ByteBuffer> readMessageBytes(String subscriptionId) throws IOException {
+        return pullDecoded(getSubscriberStub(), subscriptionId, MAX_MESSAGES)
+                .stream()
+                .map(PulledMessage::asReadOnlyByteBuffer)
+                .collect(Collectors.toList());
+    }
+
+    public static List<PulledMessage> pullMessages(String subscriptionId, int maxMessages) throws IOException {
+        return pullDecoded(getSubscriberStub(), subscriptionId, maxMessages);
+    }
+
+    public static void acknowledge(String subscriptionId, Collection<String> ackIds) throws IOException {
+        acknowledge(getSubscriberStub(), subscriptionId, ackIds);
+    }
+
+    private static void acknowledge(SubscriberStub subscriber, String subscriptionId, Collection<String> ackIds) {
+        for (List<String> batch : Lists.partition(new ArrayList<>(ackIds), MAX_ACK_IDS_PER_REQUEST)) {
+            subscriber.acknowledgeCallable().call(AcknowledgeRequest.newBuilder()
+                    .setSubscription(subscriptionPath(subscriptionId))
+                    .addAllAckIds(batch)
+                    .build());
+        }
+    }
+
+    public static void modifyAckDeadline(String subscriptionId, Collection<String> ackIds, int ackDeadlineSeconds) throws IOException {
+        modifyAckDeadline(getSubscriberStub(), subscriptionId, ackIds, ackDeadlineSeconds);
+    }
+
+    private static void modifyAckDeadline(SubscriberStub subscriber, String subscriptionId, Collection<String> ackIds, int ackDeadlineSeconds) {
+        for (List<String> batch : Lists.partition(new ArrayList<>(ackIds), MAX_ACK_IDS_PER_REQUEST)) {
+            subscriber.modifyAckDeadlineCallable().call(ModifyAckDeadlineRequest.newBuilder()
+                    .setSubscription(subscriptionPath(subscriptionId))
+                    .addAllAckIds(batch)
+                    .setAckDeadlineSeconds(ackDeadlineSeconds)
+                    .build());
+        }
+    }
+
+    public static int processBatch(String subscriptionId, int maxMessages, int ackDeadlineSeconds, BatchHandler handler) throws Exception {
+        if (ackDeadlineSeconds < 2) {
+            throw new IllegalArgumentException("processBatch expects an ack deadline of at least two seconds");
+        }
+
+        SubscriberStub subscriber = getSubscriberStub();
+        List<PulledMessage> messages = pullDecoded(subscriber, subscriptionId, maxMessages);
+        if (messages.isEmpty()) {
+            return 0;
+        }
+
+        List<String> ackIds = messages.stream().map(PulledMessage::getAckId).collect(Collectors.toList());
+        modifyAckDeadline(subscriber, subscriptionId, ackIds, ackDeadlineSeconds);
+
+        // extend the lease at half the deadline so long running batches are not redelivered
+        long extensionPeriod = ackDeadlineSeconds / 2;
+        ScheduledFuture<?> leaseExtension = getLeaseExtender().scheduleAtFixedRate(() -> {
+            try {
+                modifyAckDeadline(subscriber, subscriptionId, ackIds, ackDeadlineSeconds);
+            } catch (RuntimeException e) {
+                // throwing cancels the remaining extensions, the batch may now be redelivered
+                LOGGER.log(Level.WARNING, "Lease extension failed for " + ackIds.size()
+                        + " messages on " + subscriptionId + ", stopping extension", e);
+                throw e;
+            }
+        }, extensionPeriod, extensionPeriod, TimeUnit.SECONDS);
+        try {
+            handler.handle(messages);
+        } catch (Exception e) {
+            leaseExtension.cancel(false);
+            try {
+                modifyAckDeadline(subscriber, subscriptionId, ackIds, 0);
+            } catch (RuntimeException nackFailure) {
+                // never let the nack hide the reason the batch failed
+                e.addSuppressed(nackFailure);
+            }
+            throw e;
+        } finally {
+            leaseExtension.cancel(false);
+        }
+
+        acknowledge(subscriber, subscriptionId, ackIds);
+        return messages.size();
+    }
+
+    private static synchronized ScheduledExecutorService getLeaseExtender() {
+        if (isNull(leaseExtender)) {
+            leaseExtender = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("pubsub-lease-extender-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        return leaseExtender;
+    }
+
+    public static Subscriber subscribe(String subscriptionId, MessageHandler handler, SubscriberConfig config) {
+        MessageReceiver receiver = nonNull(config.getDeadLetter())
+                ? deadLetterReceiver(subscriptionId, handler, config.getDeadLetter())
+                : (message, consumer) -> {
+                    if (handleQuietly(handler, message)) {
+                        consumer.ack();
+                    } else {
+                        consumer.nack();
+                    }
+                };
+
+        Subscriber.Builder builder = Subscriber.newBuilder(
+                        ProjectSubscriptionName.of(System.getProperty("local.project"), subscriptionId), receiver)
+                .setParallelPullCount(config.getParallelPullCount())
+                .setExecutorProvider(InstantiatingExecutorProvider.newBuilder()
+                        .setExecutorThreadCount(config.getExecutorThreadCount())
+                        .build())
+                .setFlowControlSettings(FlowControlSettings.newBuilder()
+                        .setMaxOutstandingElementCount(config.getMaxOutstandingElementCount())
+                        .setMaxOutstandingRequestBytes(config.getMaxOutstandingRequestBytes())
+                        .build());
+        configureSubscriberSettings(builder);
+
+        Subscriber subscriber = builder.build();
+        subscriber.startAsync().awaitRunning();
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    private static boolean handleQuietly(MessageHandler handler, PubsubMessage message) {
+        try {
+            return handler.handle(PayloadCodec.decode(message));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static MessageReceiver deadLetterReceiver(String subscriptionId, MessageHandler handler, DeadLetterConfig config) {
+        // the server only reports delivery attempts when the subscription has a dead letter policy,
+        // so fall back to counting redeliveries seen by this subscriber, forgetting messages that
+        // stop arriving so abandoned ids cannot accumulate
+        Map<String, Integer> localAttempts = CacheBuilder.newBuilder()
+                .maximumSize(LOCAL_DELIVERY_ATTEMPTS_LIMIT)
+                .expireAfterWrite(LOCAL_DELIVERY_ATTEMPTS_EXPIRY)
+                .<String, Integer>build()
+                .asMap();
+        return (message, consumer) -> {
+            Integer serverAttempt = Subscriber.getDeliveryAttempt(message);
+            int attempt = nonNull(serverAttempt)
+                    ? serverAttempt
+                    : localAttempts.merge(message.getMessageId(), 1, Integer::sum);
+
+            if (attempt <= config.getMaxDeliveryAttempts() && handleQuietly(handler, message)) {
+                localAttempts.remove(message.getMessageId());
+                consumer.ack();
+            } else if (attempt >= config.getMaxDeliveryAttempts()) {
+                deadLetter(subscriptionId, message, attempt, config.getTopicId(), () -> {
+                    localAttempts.remove(message.getMessageId());
+                    consumer.ack();
+                }, consumer::nack);
+            } else {
+                consumer.nack();
+            }
+        };
+    }
+
+    private static void deadLetter(String subscriptionId, PubsubMessage message, int attempt, String deadLetterTopicId,
+                                   Runnable onSuccess, Runnable onFailure) {
+        // the original payload and encoding attributes are forwarded untouched
+        PubsubMessage deadLetter = PubsubMessage.newBuilder()
+                .setData(message.getData())
+                .putAllAttributes(message.getAttributesMap())
+                .putAttributes(DEAD_LETTER_SOURCE_ATTRIBUTE, subscriptionId)
+                .putAttributes(DEAD_LETTER_ATTEMPTS_ATTRIBUTE, String.valueOf(attempt))
+                .build();
+        try {
+            ApiFutures.addCallback(getPublisher(deadLetterTopicId).publish(deadLetter), new ApiFutureCallback<>() {
+                @Override
+                public void onFailure(Throwable t) {
+                    onFailure.run();
+                }
+
+                @Override
+                public void onSuccess(String messageId) {
+                    onSuccess.run();
+                }
+            }, MoreExecutors.directExecutor());
+        } catch (IOException e) {
+            onFailure.run();
+        }
+    }
+
+    public static void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        stopSubscriber(subscriber);
+    }
+
+    private static void stopSubscriber(Subscriber subscriber) {
+        try {
+            subscriber.stopAsync().awaitTerminated(1, TimeUnit.MINUTES);
+        } catch (TimeoutException | IllegalStateException e) {
+            // a failed or slow subscriber must not prevent the remaining clients from shutting down
         }
     }
 
+    public static void purgeTopic(String subscriptionId) throws ExecutionException, InterruptedException, IOException {
+        SeekRequest request = SeekRequest.newBuilder()
+                .setSubscription(SubscriptionName.of(System.getProperty("local.project"), subscriptionId).toString())
+                .setTime(Timestamp.newBuilder().setSeconds(Integer.MAX_VALUE))
+                .build();
+        ApiFuture<SeekResponse> future = getSubscriptionAdminClient().seekCallable().futureCall(request);
+        future.get();
+    }
+
     public static void shutdown() {
-        if (nonNull(localChannel)) {
-            localChannel.shutdown();
-            localChannel = null;
+        // subscribers and publishers are held in concurrent collections and may call back into the
+        // synchronized getters while stopping, so they are stopped before taking the lock
+        subscribers.forEach(PubSubClient::stopSubscriber);
+        subscribers.clear();
+        shutdownPublishers();
+        shutdownClients();
+    }
+
+    private static synchronized void shutdownClients() {
+        if (nonNull(leaseExtender)) {
+            leaseExtender.shutdownNow();
+            leaseExtender = null;
+        }
+        if (nonNull(topicAdminClient)) {
+            topicAdminClient.close();
+            topicAdminClient = null;
+        }
+        if (nonNull(subscriptionAdminClient)) {
+            subscriptionAdminClient.close();
+            subscriptionAdminClient = null;
+        }
+        if (nonNull(subscriberStub)) {
+            subscriberStub.close();
+            subscriberStub = null;
+        }
+        if (nonNull(transportChannel)) {
+            transportChannel.shutdown();
+            try {
+                if (!transportChannel.awaitTermination(1, TimeUnit.MINUTES)) {
+                    transportChannel.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                transportChannel.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            transportChannel = null;
+        }
+        credentialsProvider = null;
+    }
+
+    private static void shutdownPublishers() {
+        List<Publisher> allPublishers = new ArrayList<>(publishers.values());
+        allPublishers.addAll(orderedPublishers.values());
+        allPublishers.forEach(Publisher::shutdown);
+        try {
+            for (Publisher publisher : allPublishers) {
+                publisher.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            publishers.clear();
+            orderedPublishers.clear();
+            orderingKeyMetrics.invalidateAll();
         }
     }
 }
@@ -0,0 +1,30 @@
+package co.cmatts.gcp.pubsub;
+
+import com.google.api.gax.batching.FlowController.LimitExceededBehavior;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+@Value
+@Builder
+public class PublisherConfig {
+    @Builder.Default
+    long elementCountThreshold = 100;
+    @Builder.Default
+    long requestByteThreshold = 1000;
+    @Builder.Default
+    Duration delayThreshold = Duration.ofMillis(1);
+    Long maxOutstandingElementCount;
+    Long maxOutstandingRequestBytes;
+    @Builder.Default
+    LimitExceededBehavior limitExceededBehavior = LimitExceededBehavior.Block;
+    @Builder.Default
+    PayloadCompression compression = PayloadCompression.NONE;
+    @Builder.Default
+    int compressionThreshold = 1024;
+
+    public static PublisherConfig defaults() {
+        return PublisherConfig.builder().build();
+    }
+}
@@ -0,0 +1,41 @@
+package co.cmatts.gcp.pubsub;
+
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.ReceivedMessage;
+import lombok.Value;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Map;
+
+@Value
+public class PulledMessage {
+    String messageId;
+    String ackId;
+    ByteString data;
+    Map<String, String> attributes;
+    Instant publishTime;
+    int deliveryAttempt;
+
+    static PulledMessage from(ReceivedMessage receivedMessage) {
+        PubsubMessage message = PayloadCodec.decode(receivedMessage.getMessage());
+        return new PulledMessage(
+                message.getMessageId(),
+                receivedMessage.getAckId(),
+                message.getData(),
+                message.getAttributesMap(),
+                Instant.ofEpochSecond(
+                        message.getPublishTime().getSeconds(),
+                        message.getPublishTime().getNanos()),
+                receivedMessage.getDeliveryAttempt());
+    }
+
+    public String getDataAsString() {
+        return data.toStringUtf8();
+    }
+
+    public ByteBuffer asReadOnlyByteBuffer() {
+        return data.asReadOnlyByteBuffer();
+    }
+}
@@ -0,0 +1,22 @@
+package co.cmatts.gcp.pubsub;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class SubscriberConfig {
+    @Builder.Default
+    int parallelPullCount = 1;
+    @Builder.Default
+    int executorThreadCount = 4;
+    @Builder.Default
+    long maxOutstandingElementCount = 1000;
+    @Builder.Default
+    long maxOutstandingRequestBytes = 100L * 1024 * 1024;
+    DeadLetterConfig deadLetter;
+
+    public static SubscriberConfig defaults() {
+        return SubscriberConfig.builder().build();
+    }
+}
@@ -0,0 +1,21 @@
+package co.cmatts.gcp.pubsub;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+
+@Value
+@Builder
+public class SubscriptionConfig {
+    @Builder.Default
+    int ackDeadlineSeconds = 10;
+    boolean enableMessageOrdering;
+    DeadLetterConfig deadLetter;
+    Duration minimumBackoff;
+    Duration maximumBackoff;
+
+    public static SubscriptionConfig defaults() {
+        return SubscriptionConfig.builder().build();
+    }
+}
@@ -0,0 +1,9 @@
+package co.cmatts.gcp.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+@FunctionalInterface
+public interface ContentWriter {
+    void write(OutputStream out) throws IOException;
+}
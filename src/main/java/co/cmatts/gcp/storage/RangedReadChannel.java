@@ -0,0 +1,95 @@
+package co.cmatts.gcp.storage;
+
+import com.google.cloud.ReadChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+class RangedReadChannel implements SeekableByteChannel {
+    private final ReadChannel reader;
+    private final long offset;
+    private final long length;
+    private long position;
+
+    RangedReadChannel(ReadChannel reader, long offset, long length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Offset and length must not be negative but were " + offset + " and " + length);
+        }
+        this.reader = reader;
+        this.offset = offset;
+        this.length = length;
+        reader.seek(offset);
+        reader.limit(offset + length);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        if (position >= length) {
+            return -1;
+        }
+
+        int read;
+        long remaining = length - position;
+        if (dst.remaining() > remaining) {
+            ByteBuffer bounded = dst.slice();
+            bounded.limit((int) remaining);
+            read = reader.read(bounded);
+            if (read > 0) {
+                dst.position(dst.position() + read);
+            }
+        } else {
+            read = reader.read(dst);
+        }
+
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position must not be negative: " + newPosition);
+        }
+        reader.seek(offset + Math.min(newPosition, length));
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() {
+        return length;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return reader.isOpen();
+    }
+
+    @Override
+    public void close() {
+        reader.close();
+    }
+}
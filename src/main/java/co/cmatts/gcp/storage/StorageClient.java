@@ -5,18 +5,63 @@ import com.google.cloud.ReadChannel;
 import com.google.cloud.WriteChannel;
 import com.google.cloud.storage.*;
 
+import com.google.common.collect.Lists;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
 
 public class StorageClient {
+    private static final String DEFAULT_CONTENT_TYPE = "text/plain";
+    private static final int MAX_COMPOSE_SOURCES = 32;
+    private static final int CHUNK_SIZE_MULTIPLE = 256 * 1024;
+    private static final int DEFAULT_READ_CHUNK_SIZE = 2 * 1024 * 1024;
+    private static final long MAX_MAPPED_WINDOW_BYTES = 256L * 1024 * 1024;
+    // listings are returned in UTF-8 byte order, which differs from String order for some characters
+    private static final Comparator<String> LISTING_ORDER = Comparator.comparing(
+            (String name) -> name.getBytes(UTF_8), Arrays::compareUnsigned);
+    private static final Storage.BlobField[] METADATA_FIELDS = {
+            Storage.BlobField.NAME,
+            Storage.BlobField.SIZE,
+            Storage.BlobField.CONTENT_TYPE,
+            Storage.BlobField.CRC32C,
+            Storage.BlobField.MD5HASH,
+            Storage.BlobField.GENERATION,
+            Storage.BlobField.UPDATED,
+            Storage.BlobField.METADATA
+    };
     private static Storage client;
 
     public static Storage getStorageClient() {
@@ -43,8 +88,8 @@ public class StorageClient {
     }
 
     public static boolean bucketExists(String bucketName) {
-        Bucket bucket = getStorageClient().get(bucketName);
-        return bucket.exists();
+        Bucket bucket = getStorageClient().get(bucketName, Storage.BucketGetOption.fields(Storage.BucketField.NAME));
+        return nonNull(bucket) && bucket.exists();
     }
 
     public static void createBucket(String bucket) {
@@ -52,36 +97,392 @@ public class StorageClient {
     }
 
     public static void writeToBucket(String bucket, String key, Path path) throws IOException {
-        try (WriteChannel channel = getStorageClient().writer(
-                BlobInfo.newBuilder(bucket, key)
-                        .setContentType("text/plain")
-                        .build());
-             SeekableByteChannel inputChannel = Files.newByteChannel(path, StandardOpenOption.READ)) {
-            ByteBuffer byteBuffer = ByteBuffer.allocate(1000);
-            while (inputChannel.read(byteBuffer) > 0) {
-                byteBuffer.flip();
-                channel.write(ByteBuffer.wrap(byteBuffer.array()));
-                byteBuffer.clear();
+        writeSingleStream(bucket, key, path, DEFAULT_CONTENT_TYPE, Files.size(path), TransferConfig.defaults().getChunkSize(), false);
+    }
+
+    public static void writeToBucket(String bucket, String key, Path path, TransferConfig config) throws IOException {
+        writeToBucket(bucket, key, path, DEFAULT_CONTENT_TYPE, config);
+    }
+
+    public static void writeToBucket(String bucket, String key, Path path, String contentType, TransferConfig config) throws IOException {
+        writeToBucket(bucket, key, path, contentType, config, false);
+    }
+
+    public static void writeToBucketMapped(String bucket, String key, Path path, TransferConfig config) throws IOException {
+        writeToBucketMapped(bucket, key, path, DEFAULT_CONTENT_TYPE, config);
+    }
+
+    public static void writeToBucketMapped(String bucket, String key, Path path, String contentType, TransferConfig config) throws IOException {
+        writeToBucket(bucket, key, path, contentType, config, true);
+    }
+
+    private static void writeToBucket(String bucket, String key, Path path, String contentType, TransferConfig config, boolean memoryMapped) throws IOException {
+        validateTransferConfig(config);
+        long size = Files.size(path);
+        if (size <= config.getPartSize()) {
+            writeSingleStream(bucket, key, path, contentType, size, config.getChunkSize(), memoryMapped);
+        } else {
+            writeComposite(bucket, key, path, contentType, size, config, memoryMapped);
+        }
+    }
+
+    private static void writeSingleStream(String bucket, String key, Path path, String contentType, long size, int chunkSize, boolean memoryMapped) throws IOException {
+        try (FileChannel inputChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            writePart(BlobInfo.newBuilder(bucket, key)
+                    .setContentType(contentType)
+                    .build(), inputChannel, 0, size, chunkSize, memoryMapped);
+        }
+    }
+
+    private static void writeComposite(String bucket, String key, Path path, String contentType, long size, TransferConfig config, boolean memoryMapped) throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        int partCount = (int) ((size + config.getPartSize() - 1) / config.getPartSize());
+        List<BlobId> parts = new ArrayList<>(partCount);
+        for (int i = 0; i < partCount; i++) {
+            parts.add(BlobId.of(bucket, tempObjectName(key, uploadId, i)));
+        }
+
+        List<BlobId> temporaryObjects = new ArrayList<>(parts);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(config.getConcurrency(), partCount));
+        try (FileChannel inputChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<CompletableFuture<Void>> uploads = new ArrayList<>(partCount);
+            for (int i = 0; i < partCount; i++) {
+                long offset = i * config.getPartSize();
+                long length = Math.min(config.getPartSize(), size - offset);
+                BlobInfo part = BlobInfo.newBuilder(parts.get(i)).build();
+                uploads.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        writePart(part, inputChannel, offset, length, config.getChunkSize(), memoryMapped);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
             }
+            awaitAll(uploads);
+
+            compose(bucket, key, contentType, parts, uploadId, temporaryObjects);
+        } catch (IOException | RuntimeException | Error e) {
+            executor.shutdownNow();
+            deleteTemporaryObjects(temporaryObjects, e);
+            throw e;
+        }
+        executor.shutdownNow();
+        deleteTemporaryObjects(temporaryObjects, null);
+    }
+
+    private static void deleteTemporaryObjects(List<BlobId> temporaryObjects, Throwable failure) {
+        try {
+            getStorageClient().delete(temporaryObjects);
+        } catch (RuntimeException e) {
+            // never let cleanup hide the reason the upload failed
+            if (isNull(failure)) {
+                throw e;
+            }
+            failure.addSuppressed(e);
+        }
+    }
+
+    private static void compose(String bucket, String key, String contentType, List<BlobId> sources, String uploadId, List<BlobId> temporaryObjects) {
+        List<BlobId> level = sources;
+        int nextIndex = sources.size();
+        while (level.size() > MAX_COMPOSE_SOURCES) {
+            List<BlobId> nextLevel = new ArrayList<>();
+            for (List<BlobId> group : Lists.partition(level, MAX_COMPOSE_SOURCES)) {
+                BlobId target = BlobId.of(bucket, tempObjectName(key, uploadId, nextIndex++));
+                temporaryObjects.add(target);
+                composeInto(BlobInfo.newBuilder(target).build(), group);
+                nextLevel.add(target);
+            }
+            level = nextLevel;
+        }
+
+        composeInto(BlobInfo.newBuilder(bucket, key)
+                .setContentType(contentType)
+                .build(), level);
+    }
+
+    private static void composeInto(BlobInfo target, List<BlobId> sources) {
+        getStorageClient().compose(Storage.ComposeRequest.newBuilder()
+                .addSource(sources.stream().map(BlobId::getName).collect(Collectors.toList()))
+                .setTarget(target)
+                .build());
+    }
+
+    private static String tempObjectName(String key, String uploadId, int index) {
+        return String.format("%s.%s.part-%05d", key, uploadId, index);
+    }
+
+    private static void writePart(BlobInfo blobInfo, FileChannel inputChannel, long offset, long length, int chunkSize, boolean memoryMapped) throws IOException {
+        try (WriteChannel channel = getStorageClient().writer(blobInfo)) {
+            channel.setChunkSize(chunkSize);
+            if (memoryMapped) {
+                writeMapped(channel, inputChannel, offset, length, chunkSize);
+            } else {
+                writeBuffered(channel, inputChannel, offset, length, chunkSize);
+            }
+        }
+    }
+
+    private static void writeMapped(WriteChannel channel, FileChannel inputChannel, long offset, long length, int chunkSize) throws IOException {
+        // map large windows so the page cache backs the upload without heap copies; a mapping is only
+        // released when its buffer is collected, so windows are bounded rather than one per chunk
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            long windowSize = Math.min(MAX_MAPPED_WINDOW_BYTES, end - position);
+            MappedByteBuffer window = inputChannel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            while (window.hasRemaining()) {
+                window.limit(Math.min(window.position() + chunkSize, window.capacity()));
+                while (window.hasRemaining()) {
+                    channel.write(window);
+                }
+                window.limit(window.capacity());
+            }
+            position += windowSize;
+        }
+    }
+
+    private static void writeBuffered(WriteChannel channel, FileChannel inputChannel, long offset, long length, int chunkSize) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.allocate((int) Math.min(chunkSize, Math.max(length, 1)));
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            byteBuffer.limit((int) Math.min(byteBuffer.capacity(), end - position));
+            int read = inputChannel.read(byteBuffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of file at offset " + position);
+            }
+            position += read;
+            byteBuffer.flip();
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+            byteBuffer.clear();
+        }
+    }
+
+    private static void awaitAll(List<CompletableFuture<Void>> futures) throws IOException {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            futures.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Parallel transfer failed", e.getCause());
         }
     }
 
     public static void writeToBucket(String bucket, String key, String content) throws IOException {
+        writeToBucket(bucket, key, content, DEFAULT_CONTENT_TYPE);
+    }
+
+    public static void writeToBucket(String bucket, String key, String content, String contentType) throws IOException {
         try (WriteChannel channel = getStorageClient().writer(
                 BlobInfo.newBuilder(bucket, key)
-                        .setContentType("text/plain")
+                        .setContentType(contentType)
                         .build())) {
-            channel.write(ByteBuffer.wrap(content.getBytes()));
+            ByteBuffer byteBuffer = ByteBuffer.wrap(content.getBytes(UTF_8));
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
         }
     }
 
+    public static void writeToBucket(String bucket, String key, InputStream content, String contentType, int chunkSize) throws IOException {
+        writeToBucket(bucket, key, Channels.newChannel(content), contentType, chunkSize);
+    }
+
+    public static void writeToBucket(String bucket, String key, ReadableByteChannel content, String contentType, int chunkSize) throws IOException {
+        validateChunkSize(chunkSize);
+        WriteChannel channel = openWriter(bucket, key, contentType, chunkSize);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(chunkSize);
+        while (content.read(byteBuffer) >= 0 || byteBuffer.position() > 0) {
+            byteBuffer.flip();
+            channel.write(byteBuffer);
+            byteBuffer.compact();
+        }
+        // closing finalizes the upload, so a failed read above must leave the session unfinalized
+        channel.close();
+    }
+
+    public static void writeToBucket(String bucket, String key, ContentWriter writer, String contentType, int chunkSize) throws IOException {
+        validateChunkSize(chunkSize);
+        WriteChannel channel = openWriter(bucket, key, contentType, chunkSize);
+        writer.write(new NonClosingOutputStream(Channels.newOutputStream(channel)));
+        // closing finalizes the upload, so a failed writer above must leave the session unfinalized
+        channel.close();
+    }
+
+    private static WriteChannel openWriter(String bucket, String key, String contentType, int chunkSize) {
+        WriteChannel channel = getStorageClient().writer(BlobInfo.newBuilder(bucket, key)
+                .setContentType(contentType)
+                .build());
+        channel.setChunkSize(chunkSize);
+        return channel;
+    }
+
+    static void validateChunkSize(int chunkSize) {
+        if (chunkSize <= 0 || chunkSize % CHUNK_SIZE_MULTIPLE != 0) {
+            throw new IllegalArgumentException("Chunk size must be a positive multiple of "
+                    + CHUNK_SIZE_MULTIPLE + " bytes but was " + chunkSize);
+        }
+    }
+
+    static void validateTransferConfig(TransferConfig config) {
+        if (config.getPartSize() <= 0) {
+            throw new IllegalArgumentException("Part size must be positive but was " + config.getPartSize());
+        }
+        if (config.getConcurrency() <= 0) {
+            throw new IllegalArgumentException("Concurrency must be positive but was " + config.getConcurrency());
+        }
+        validateChunkSize(config.getChunkSize());
+    }
+
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    public static StorageTransferManager newTransferManager(TransferManagerConfig config) {
+        return new StorageTransferManager(config);
+    }
+
     public static boolean fileExists(String bucketName, String key) {
-        Blob blob = getStorageClient().get(bucketName, key);
+        Blob blob = getStorageClient().get(bucketName, key, Storage.BlobGetOption.fields(Storage.BlobField.NAME));
         return nonNull(blob) && blob.exists();
     }
 
+    public static Map<String, Boolean> existsAll(String bucketName, Collection<String> keys) {
+        Map<String, Blob> found = listKeys(bucketName, keys, Storage.BlobField.NAME);
+        Map<String, Boolean> exists = new LinkedHashMap<>();
+        keys.forEach(key -> exists.put(key, found.containsKey(key)));
+        return exists;
+    }
+
+    public static Map<String, Blob> getMetadata(String bucketName, Collection<String> keys) {
+        return listKeys(bucketName, keys, METADATA_FIELDS);
+    }
+
+    private static Map<String, Blob> listKeys(String bucketName, Collection<String> keys, Storage.BlobField... fields) {
+        // one listing per parent prefix replaces a get round trip per key
+        Map<String, TreeSet<String>> keysByPrefix = keys.stream()
+                .collect(Collectors.groupingBy(StorageClient::parentPrefix, Collectors.toCollection(() -> new TreeSet<>(LISTING_ORDER))));
+
+        Map<String, Blob> found = new HashMap<>();
+        keysByPrefix.forEach((prefix, wanted) -> {
+            // start at the first wanted key and stop after the last so large directories are not paged in full
+            String last = wanted.last();
+            for (Blob blob : getStorageClient().list(bucketName,
+                    Storage.BlobListOption.prefix(prefix),
+                    Storage.BlobListOption.currentDirectory(),
+                    Storage.BlobListOption.startOffset(wanted.first()),
+                    Storage.BlobListOption.fields(fields)).iterateAll()) {
+                if (LISTING_ORDER.compare(blob.getName(), last) > 0) {
+                    break;
+                }
+                if (wanted.contains(blob.getName())) {
+                    found.put(blob.getName(), blob);
+                }
+            }
+        });
+        return found;
+    }
+
+    private static String parentPrefix(String key) {
+        return key.substring(0, key.lastIndexOf('/') + 1);
+    }
+
     public static InputStream readFromBucket(String bucketName, String key) {
         ReadChannel reader = getStorageClient().reader(bucketName, key);
         return Channels.newInputStream(reader);
     }
+
+    public static SeekableByteChannel readFromBucket(String bucketName, String key, long offset, long length) throws IOException {
+        return readFromBucket(bucketName, key, offset, length, DEFAULT_READ_CHUNK_SIZE);
+    }
+
+    public static SeekableByteChannel readFromBucket(String bucketName, String key, long offset, long length, int chunkSize) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Offset and length must not be negative but were " + offset + " and " + length);
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive but was " + chunkSize);
+        }
+        Blob blob = getStorageClient().get(bucketName, key,
+                Storage.BlobGetOption.fields(Storage.BlobField.SIZE, Storage.BlobField.GENERATION));
+        if (isNull(blob)) {
+            throw new FileNotFoundException("gs://" + bucketName + "/" + key);
+        }
+
+        // pin the generation so the clamped size matches the object being read
+        ReadChannel reader = getStorageClient().reader(BlobId.of(bucketName, key, blob.getGeneration()));
+        reader.setChunkSize(chunkSize);
+        return new RangedReadChannel(reader, offset, Math.min(length, Math.max(0, blob.getSize() - offset)));
+    }
+
+    public static void readFromBucket(String bucketName, String key, Path destination, TransferConfig config) throws IOException {
+        validateTransferConfig(config);
+        Blob blob = getStorageClient().get(bucketName, key,
+                Storage.BlobGetOption.fields(Storage.BlobField.SIZE, Storage.BlobField.GENERATION));
+        if (isNull(blob)) {
+            throw new FileNotFoundException("gs://" + bucketName + "/" + key);
+        }
+
+        // pin the generation so every range is read from the same version of the object
+        BlobId source = BlobId.of(bucketName, key, blob.getGeneration());
+        long size = blob.getSize();
+        int partCount = (int) Math.max(1, (size + config.getPartSize() - 1) / config.getPartSize());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(config.getConcurrency(), partCount));
+        try (FileChannel outputChannel = FileChannel.open(destination,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<CompletableFuture<Void>> downloads = new ArrayList<>(partCount);
+            for (int i = 0; i < partCount; i++) {
+                long offset = i * config.getPartSize();
+                long length = Math.min(config.getPartSize(), size - offset);
+                downloads.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        readPart(source, outputChannel, offset, length, config.getChunkSize());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
+            }
+            awaitAll(downloads);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void readPart(BlobId source, FileChannel outputChannel, long offset, long length, int chunkSize) throws IOException {
+        try (ReadChannel reader = getStorageClient().reader(source)) {
+            reader.setChunkSize(chunkSize);
+            SeekableByteChannel rangeChannel = new RangedReadChannel(reader, offset, length);
+            ByteBuffer byteBuffer = ByteBuffer.allocate((int) Math.min(chunkSize, Math.max(length, 1)));
+            long position = offset;
+            while (rangeChannel.read(byteBuffer) >= 0) {
+                byteBuffer.flip();
+                while (byteBuffer.hasRemaining()) {
+                    position += outputChannel.write(byteBuffer, position);
+                }
+                byteBuffer.clear();
+            }
+            if (position != offset + length) {
+                throw new EOFException("Expected " + length + " bytes from offset " + offset
+                        + " of " + source + " but read " + (position - offset));
+            }
+        }
+    }
 }
@@ -0,0 +1,285 @@
+package co.cmatts.gcp.storage;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static co.cmatts.gcp.storage.StorageClient.getStorageClient;
+import static java.util.Objects.nonNull;
+
+public class StorageTransferManager implements AutoCloseable {
+    private static final long SKIPPED = -1;
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final Storage.BlobField[] LISTING_FIELDS = {
+            Storage.BlobField.NAME,
+            Storage.BlobField.SIZE,
+            Storage.BlobField.CRC32C,
+            Storage.BlobField.MD5HASH,
+            Storage.BlobField.GENERATION
+    };
+
+    private final TransferManagerConfig config;
+    private final ExecutorService executor;
+    private final Semaphore largeTransfers;
+
+    StorageTransferManager(TransferManagerConfig config) {
+        if (config.getWorkerCount() < 1) {
+            throw new IllegalArgumentException("StorageTransferManager expects at least one worker");
+        }
+        if (config.getLargeObjectConcurrency() < 1) {
+            throw new IllegalArgumentException("StorageTransferManager expects at least one large object transfer");
+        }
+        StorageClient.validateTransferConfig(config.getLargeObjectTransfer());
+        this.config = config;
+        this.executor = Executors.newFixedThreadPool(config.getWorkerCount());
+        // each large object runs its own pool of ranged transfers, so only a few may run at once
+        this.largeTransfers = new Semaphore(config.getLargeObjectConcurrency());
+    }
+
+    public TransferResult uploadDirectory(Path directory, String bucket, String prefix) throws IOException {
+        String keyPrefix = normalisePrefix(prefix);
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        // a single listing provides the size and checksums of every object that might be skipped
+        Map<String, Blob> existing = config.isSkipUnchanged() ? listObjects(bucket, keyPrefix) : Collections.emptyMap();
+
+        Transfer transfer = new Transfer(files.size());
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(files.size());
+        for (Path file : files) {
+            String key = keyPrefix + toKey(directory.relativize(file));
+            tasks.add(transfer.submit(key, () -> upload(file, bucket, key, existing.get(key))));
+        }
+        return transfer.await(tasks);
+    }
+
+    public TransferResult downloadDirectory(String bucket, String prefix, Path directory) throws IOException {
+        String keyPrefix = normalisePrefix(prefix);
+        Path root = directory.toAbsolutePath().normalize();
+        List<Blob> blobs = listObjects(bucket, keyPrefix).values().stream()
+                .filter(blob -> !blob.getName().endsWith("/"))
+                .collect(Collectors.toList());
+
+        Transfer transfer = new Transfer(blobs.size());
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(blobs.size());
+        for (Blob blob : blobs) {
+            Path target = root.resolve(blob.getName().substring(keyPrefix.length())).normalize();
+            tasks.add(transfer.submit(blob.getName(), () -> download(blob, root, target)));
+        }
+        return transfer.await(tasks);
+    }
+
+    private long upload(Path file, String bucket, String key, Blob existing) throws IOException {
+        long size = Files.size(file);
+        if (unchanged(file, size, existing)) {
+            return SKIPPED;
+        }
+
+        String contentType = contentType(file);
+        if (size <= config.getSingleRequestThreshold()) {
+            getStorageClient().create(BlobInfo.newBuilder(bucket, key)
+                    .setContentType(contentType)
+                    .build(), Files.readAllBytes(file));
+        } else {
+            acquireLargeTransfer();
+            try {
+                StorageClient.writeToBucket(bucket, key, file, contentType, config.getLargeObjectTransfer());
+            } finally {
+                largeTransfers.release();
+            }
+        }
+        return size;
+    }
+
+    private long download(Blob blob, Path root, Path target) throws IOException {
+        if (!target.startsWith(root)) {
+            throw new IOException("Object " + blob.getName() + " resolves outside of " + root);
+        }
+        if (config.isSkipUnchanged() && Files.isRegularFile(target) && unchanged(target, Files.size(target), blob)) {
+            return SKIPPED;
+        }
+
+        Files.createDirectories(target.getParent());
+        if (blob.getSize() <= config.getSingleRequestThreshold()) {
+            blob.downloadTo(target);
+        } else {
+            acquireLargeTransfer();
+            try {
+                StorageClient.readFromBucket(blob.getBucket(), blob.getName(), target, config.getLargeObjectTransfer());
+            } finally {
+                largeTransfers.release();
+            }
+        }
+        return blob.getSize();
+    }
+
+    private void acquireLargeTransfer() throws IOException {
+        try {
+            largeTransfers.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a large object transfer slot");
+        }
+    }
+
+    private Map<String, Blob> listObjects(String bucket, String keyPrefix) {
+        Map<String, Blob> blobs = new HashMap<>();
+        getStorageClient().list(bucket,
+                        Storage.BlobListOption.prefix(keyPrefix),
+                        Storage.BlobListOption.fields(LISTING_FIELDS))
+                .iterateAll()
+                .forEach(blob -> blobs.put(blob.getName(), blob));
+        return blobs;
+    }
+
+    private static String contentType(Path file) throws IOException {
+        String contentType = Files.probeContentType(file);
+        return nonNull(contentType) ? contentType : DEFAULT_CONTENT_TYPE;
+    }
+
+    private static boolean unchanged(Path file, long size, Blob blob) throws IOException {
+        if (blob == null || blob.getSize() == null || blob.getSize() != size) {
+            return false;
+        }
+        if (nonNull(blob.getCrc32c())) {
+            return blob.getCrc32c().equals(crc32c(file));
+        }
+        if (nonNull(blob.getMd5())) {
+            return blob.getMd5().equals(md5(file));
+        }
+        return false;
+    }
+
+    private static String crc32c(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).array());
+    }
+
+    private static String md5(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private static String normalisePrefix(String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return "";
+        }
+        return prefix.endsWith("/") ? prefix : prefix + "/";
+    }
+
+    private static String toKey(Path relativePath) {
+        List<String> names = new ArrayList<>();
+        relativePath.forEach(name -> names.add(name.toString()));
+        return String.join("/", names);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface TransferTask {
+        long run() throws IOException;
+    }
+
+    private class Transfer {
+        private final int totalFiles;
+        private final long start = System.nanoTime();
+        private final AtomicLong filesTransferred = new AtomicLong();
+        private final AtomicLong filesSkipped = new AtomicLong();
+        private final AtomicLong bytesTransferred = new AtomicLong();
+        private final List<TransferFailure> failures = Collections.synchronizedList(new ArrayList<>());
+
+        Transfer(int totalFiles) {
+            this.totalFiles = totalFiles;
+        }
+
+        CompletableFuture<Void> submit(String key, TransferTask task) {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    long bytes = task.run();
+                    if (bytes == SKIPPED) {
+                        filesSkipped.incrementAndGet();
+                    } else {
+                        filesTransferred.incrementAndGet();
+                        bytesTransferred.addAndGet(bytes);
+                    }
+                } catch (Exception e) {
+                    failures.add(new TransferFailure(key, e));
+                }
+                reportProgress();
+            }, executor);
+        }
+
+        TransferResult await(List<CompletableFuture<Void>> tasks) {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+            return new TransferResult(filesTransferred.get(), filesSkipped.get(), bytesTransferred.get(),
+                    new ArrayList<>(failures), elapsed());
+        }
+
+        private void reportProgress() {
+            if (nonNull(config.getProgressListener())) {
+                config.getProgressListener().accept(new TransferProgress(totalFiles, filesTransferred.get(),
+                        filesSkipped.get(), failures.size(), bytesTransferred.get(), elapsed()));
+            }
+        }
+
+        private Duration elapsed() {
+            return Duration.ofNanos(System.nanoTime() - start);
+        }
+    }
+}
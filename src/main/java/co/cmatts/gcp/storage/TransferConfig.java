@@ -0,0 +1,19 @@
+package co.cmatts.gcp.storage;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class TransferConfig {
+    @Builder.Default
+    long partSize = 64L * 1024 * 1024;
+    @Builder.Default
+    int concurrency = 8;
+    @Builder.Default
+    int chunkSize = 16 * 1024 * 1024;
+
+    public static TransferConfig defaults() {
+        return TransferConfig.builder().build();
+    }
+}
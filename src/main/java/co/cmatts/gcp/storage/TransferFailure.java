@@ -0,0 +1,9 @@
+package co.cmatts.gcp.storage;
+
+import lombok.Value;
+
+@Value
+public class TransferFailure {
+    String key;
+    Throwable cause;
+}
@@ -0,0 +1,26 @@
+package co.cmatts.gcp.storage;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.function.Consumer;
+
+@Value
+@Builder
+public class TransferManagerConfig {
+    @Builder.Default
+    int workerCount = 16;
+    @Builder.Default
+    long singleRequestThreshold = 8L * 1024 * 1024;
+    @Builder.Default
+    boolean skipUnchanged = true;
+    @Builder.Default
+    TransferConfig largeObjectTransfer = TransferConfig.defaults();
+    @Builder.Default
+    int largeObjectConcurrency = 2;
+    Consumer<TransferProgress> progressListener;
+
+    public static TransferManagerConfig defaults() {
+        return TransferManagerConfig.builder().build();
+    }
+}
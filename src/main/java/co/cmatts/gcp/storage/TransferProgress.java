@@ -0,0 +1,27 @@
+package co.cmatts.gcp.storage;
+
+import lombok.Value;
+
+import java.time.Duration;
+
+@Value
+public class TransferProgress {
+    int totalFiles;
+    long filesTransferred;
+    long filesSkipped;
+    long filesFailed;
+    long bytesTransferred;
+    Duration elapsed;
+
+    public long filesCompleted() {
+        return filesTransferred + filesSkipped + filesFailed;
+    }
+
+    public double bytesPerSecond() {
+        long nanos = elapsed.toNanos();
+        if (nanos == 0) {
+            return 0;
+        }
+        return bytesTransferred * 1_000_000_000d / nanos;
+    }
+}
@@ -0,0 +1,35 @@
+package co.cmatts.gcp.storage;
+
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.List;
+
+@Value
+public class TransferResult {
+    long filesTransferred;
+    long filesSkipped;
+    long bytesTransferred;
+    List<TransferFailure> failures;
+    Duration elapsed;
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    public double bytesPerSecond() {
+        long nanos = elapsed.toNanos();
+        if (nanos == 0) {
+            return 0;
+        }
+        return bytesTransferred * 1_000_000_000d / nanos;
+    }
+
+    public double filesPerSecond() {
+        long nanos = elapsed.toNanos();
+        if (nanos == 0) {
+            return 0;
+        }
+        return filesTransferred * 1_000_000_000d / nanos;
+    }
+}
@@ -2,7 +2,9 @@ package co.cmatts.gcp.datastore;
 
 import co.cmatts.gcp.datastore.model.Fact;
 import co.cmatts.gcp.datastore.model.Person;
+import co.cmatts.gcp.datastore.model.PersonSummary;
 import co.cmatts.gcp.datastore.model.Siblings;
+import com.googlecode.objectify.ObjectifyService;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,13 +15,18 @@ import uk.org.webcompere.systemstubs.jupiter.SystemStub;
 import uk.org.webcompere.systemstubs.jupiter.SystemStubsExtension;
 import uk.org.webcompere.systemstubs.properties.SystemProperties;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static co.cmatts.gcp.datastore.DatastoreTestDataFactory.*;
 import static co.cmatts.gcp.datastore.DatastoreTestDataFactory.peopleCount;
+import static com.googlecode.objectify.ObjectifyService.ofy;
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @Testcontainers
 @ExtendWith(SystemStubsExtension.class)
@@ -111,4 +118,137 @@ class DatastoreRepositoryTest   {
         assertThat(updatedPerson.toString()).isEqualTo(person.toString());
         assertThat(updatedFact.toString()).isEqualTo(fact.toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldStreamAllPeopleSortedInPages() {
+        List<String> names = repo.streamPeople(5)
+                .map(Person::getName)
+                .collect(Collectors.toList());
+
+        assertThat(names).hasSize(peopleCount());
+        assertThat(names).isSorted();
+        assertThat(names).containsExactlyElementsOf(repo.findPeople().stream()
+                .map(Person::getName)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void shouldPrefetchPagesOnSuppliedExecutor() {
+        AtomicInteger pageFetches = new AtomicInteger();
+        DatastoreRepository repoWithExecutor = new DatastoreRepository(command -> {
+            pageFetches.incrementAndGet();
+            command.run();
+        });
+
+        assertThat(repoWithExecutor.streamPeople(5).count()).isEqualTo(peopleCount());
+        assertThat(pageFetches.get()).isGreaterThanOrEqualTo(peopleCount() / 5);
+    }
+
+    @Test
+    void shouldFindPersonSummariesByFather() {
+        List<PersonSummary> summaries = repo.findPersonSummariesByFather("19");
+
+        assertThat(summaries).containsExactlyInAnyOrder(
+                new PersonSummary("10", 1900, "19", "17"),
+                new PersonSummary("11", 1890, "19", "17"));
+        assertThat(summaries).extracting(PersonSummary::getYearOfBirth).containsExactlyInAnyOrder(1900, 1890);
+    }
+
+    @Test
+    void shouldFindPersonSummariesByMother() {
+        List<PersonSummary> summaries = repo.findPersonSummariesByMother("21");
+
+        assertThat(summaries).extracting(PersonSummary::getId).containsExactlyInAnyOrder("5", "6");
+        assertThat(summaries).extracting(PersonSummary::getFatherId).containsOnly("16");
+    }
+
+    @Test
+    void shouldFindAncestorsByGeneration() {
+        List<List<Person>> ancestors = repo.findAncestors("1", 5);
+
+        assertThat(ancestors).hasSize(1);
+        assertThat(ancestors.get(0)).extracting(Person::getId).containsExactly("16", "17");
+    }
+
+    @Test
+    void shouldFindDescendantsByGeneration() {
+        List<List<Person>> descendants = repo.findDescendants("14", 5);
+
+        assertThat(descendants).hasSize(1);
+        assertThat(descendants.get(0)).extracting(Person::getId).containsExactly("13");
+    }
+
+    @Test
+    void shouldLimitDescendantsToMaxDepth() {
+        List<List<Person>> descendants = repo.findDescendants("17", 1);
+
+        assertThat(descendants).hasSize(1);
+        assertThat(descendants.get(0)).extracting(Person::getId)
+                .containsExactly("1", "10", "11", "12", "2", "8", "9");
+    }
+
+    @Test
+    void shouldRejectTraversalWithoutDepth() {
+        assertThatThrownBy(() -> repo.findAncestors("1", 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldFindDescendantsAcrossSeveralGenerations() {
+        List<Person> family = asList(
+                relative("g1", null),
+                relative("g2a", "g1"),
+                relative("g2b", "g1"),
+                relative("g3a", "g2a"),
+                relative("g3b", "g2b"),
+                relative("g4", "g3a"));
+        repo.save(family);
+        try {
+            List<List<Person>> descendants = repo.findDescendants("g1", 5);
+            assertThat(descendants).hasSize(3);
+            assertThat(descendants.get(0)).extracting(Person::getId).containsExactly("g2a", "g2b");
+            assertThat(descendants.get(1)).extracting(Person::getId).containsExactly("g3a", "g3b");
+            assertThat(descendants.get(2)).extracting(Person::getId).containsExactly("g4");
+
+            assertThat(repo.findDescendants("g1", 2)).hasSize(2);
+
+            List<List<Person>> ancestors = repo.findAncestors("g4", 5);
+            assertThat(ancestors).extracting(generation -> generation.get(0).getId())
+                    .containsExactly("g3a", "g2a", "g1");
+        } finally {
+            delete(family);
+        }
+    }
+
+    @Test
+    void shouldPruneVisitedPeopleInCyclicRelationships() {
+        List<Person> cycle = asList(
+                relative("c1", "c2"),
+                relative("c2", "c1"));
+        repo.save(cycle);
+        try {
+            List<List<Person>> descendants = repo.findDescendants("c1", 10);
+            assertThat(descendants).hasSize(1);
+            assertThat(descendants.get(0)).extracting(Person::getId).containsExactly("c2");
+
+            List<List<Person>> ancestors = repo.findAncestors("c1", 10);
+            assertThat(ancestors).hasSize(1);
+            assertThat(ancestors.get(0)).extracting(Person::getId).containsExactly("c2");
+        } finally {
+            delete(cycle);
+        }
+    }
+
+    private static Person relative(String id, String fatherId) {
+        return Person.builder()
+                .id(id)
+                .name("Relative " + id)
+                .fatherId(fatherId)
+                .yearOfBirth(1950)
+                .facts(new ArrayList<>())
+                .build();
+    }
+
+    private static void delete(List<Person> people) {
+        ObjectifyService.run(() -> ofy().delete().entities(people).now());
+    }
+}
@@ -0,0 +1,50 @@
+package co.cmatts.gcp.datastore.model;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toList;
+
+public class LegacySiblings {
+
+    public static Siblings classify(Person person, Set<Person> allSiblings, List<Person> parents) {
+        return Siblings.builder()
+                .fullSiblings(allSiblings.stream()
+                        .filter(s -> Objects.equals(s.getFatherId(), person.getFatherId()) &&
+                                Objects.equals(s.getMotherId(), person.getMotherId()))
+                        .sorted(LegacySiblings::comparePeople)
+                        .collect(toList()))
+                .stepByFather(allSiblings.stream()
+                        .filter(s -> Objects.equals(s.getFatherId(), person.getFatherId()) &&
+                                !Objects.equals(s.getMotherId(), person.getMotherId()))
+                        .sorted((a, b) -> sortByParentYear(a, b, a.getMotherId(), b.getMotherId()))
+                        .collect(toList()))
+                .stepByMother(allSiblings.stream()
+                        .filter(s -> !Objects.equals(s.getFatherId(), person.getFatherId()) &&
+                                Objects.equals(s.getMotherId(), person.getMotherId()))
+                        .sorted((a, b) -> sortByParentYear(a, b, a.getFatherId(), b.getFatherId()))
+                        .collect(toList()))
+                .parents(parents)
+                .build();
+    }
+
+    private static int comparePeople(Person a, Person b) {
+        return a.getYearOfBirth() > b.getYearOfBirth() ||
+                (Objects.equals(a.getYearOfBirth(), b.getYearOfBirth()) && StringUtils.compare(a.getId(), b.getId()) > 0) ? 1 : -1;
+    }
+
+    private static int sortByParentYear(Person a, Person b, String aParentId, String bParentId) {
+        return
+                (Objects.equals(aParentId, bParentId) &&
+                        (b.getYearOfBirth() == null ||
+                                (a.getYearOfBirth() != null && (a.getYearOfBirth() > b.getYearOfBirth() ||
+                                        (Objects.equals(a.getYearOfBirth(), b.getYearOfBirth()) && StringUtils.compare(a.getId(), b.getId()) > 0)))))
+                        ||
+                        (!Objects.equals(aParentId, bParentId) &&
+                                ((aParentId != null && bParentId == null) || (aParentId != null && StringUtils.compare(aParentId, bParentId) > 0)))
+                        ? 1 : -1;
+    }
+}
@@ -0,0 +1,104 @@
+package co.cmatts.gcp.firestore;
+
+import co.cmatts.gcp.firestore.model.Fact;
+import co.cmatts.gcp.firestore.model.Person;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.testcontainers.containers.FirestoreEmulatorContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import uk.org.webcompere.systemstubs.jupiter.SystemStub;
+import uk.org.webcompere.systemstubs.jupiter.SystemStubsExtension;
+import uk.org.webcompere.systemstubs.properties.SystemProperties;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static co.cmatts.gcp.firestore.FirestoreRepository.BATCH_SIZE;
+import static co.cmatts.gcp.firestore.FirestoreTestDataFactory.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Testcontainers
+@ExtendWith(SystemStubsExtension.class)
+class AsyncFirestoreRepositoryTest {
+
+    @SystemStub
+    private static SystemProperties systemProperties;
+
+    @Container
+    private static final FirestoreEmulatorContainer localFirestore = new FirestoreEmulatorContainer("gcr.io/google.com/cloudsdktool/google-cloud-cli:441.0.0-emulators");
+
+    private static AsyncFirestoreRepository repo;
+
+    @BeforeAll
+    static void beforeAll() throws Exception {
+        systemProperties
+                .set("local.firestore.url", localFirestore.getEmulatorEndpoint())
+                .set("local.project", "test-project");
+
+        FirestoreRepository.resetFirestoreClient();
+        repo = new AsyncFirestoreRepository();
+        repo.load(peopleDataList(), factDataList()).get();
+    }
+
+    @Test
+    void shouldFindPerson() throws Exception {
+        Optional<Person> result = repo.findPerson("1").get();
+        assertThat(result).contains(person(1));
+        assertThat(result.get().toString()).isEqualTo(person(1).toString());
+    }
+
+    @Test
+    void shouldNotFindPerson() throws Exception {
+        assertThat(repo.findPerson("99").get()).isEmpty();
+    }
+
+    @Test
+    void shouldServeAsyncPersonLookupsFromSharedCache() throws Exception {
+        FirestoreRepository cachedRepo = new FirestoreRepository(CacheConfig.builder().build());
+        AsyncFirestoreRepository cachedAsyncRepo = new AsyncFirestoreRepository(cachedRepo);
+
+        assertThat(cachedAsyncRepo.findPerson("2").get()).contains(person(2));
+        assertThat(cachedRepo.findPerson("2")).contains(person(2));
+
+        assertThat(cachedRepo.personCacheStats().get().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldFindFactsForPerson() throws Exception {
+        List<Fact> facts = repo.findFacts("1").get();
+        assertThat(facts).containsExactlyInAnyOrder(fact(1), fact(2), fact(3));
+    }
+
+    @Test
+    void shouldFindSiblingsConcurrently() throws Exception {
+        CompletableFuture<?> all = CompletableFuture.allOf(
+                repo.findSiblings("1").thenAccept(s -> assertThat(s).isEqualTo(PERSON_1_SIBLINGS)),
+                repo.findSiblings("3").thenAccept(s -> assertThat(s).isEqualTo(PERSON_3_SIBLINGS)),
+                repo.findSiblings("8").thenAccept(s -> assertThat(s).isEqualTo(PERSON_8_SIBLINGS)));
+        all.get();
+    }
+
+    @Test
+    void shouldFindAllPeopleSorted() throws Exception {
+        List<Person> people = repo.findPeople().get();
+        assertThat(people).hasSize(peopleCount());
+        assertThat(people.get(0).getName()).isEqualTo("First Person");
+    }
+
+    @Test
+    void shouldLoadBatchesWithBoundedConcurrency() throws Exception {
+        repo.load(2, factDataList("asyncBulk", 3 * BATCH_SIZE + 1)).get();
+
+        assertThat(repo.findFacts("asyncBulk").get()).hasSize(3 * BATCH_SIZE + 1);
+    }
+
+    @Test
+    void shouldRejectLoadWithoutConcurrentBatches() {
+        assertThatThrownBy(() -> repo.load(0, factDataList("asyncBulk", 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
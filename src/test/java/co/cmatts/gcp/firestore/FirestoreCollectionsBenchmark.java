@@ -0,0 +1,64 @@
+package co.cmatts.gcp.firestore;
+
+import co.cmatts.gcp.firestore.model.Fact;
+import co.cmatts.gcp.firestore.model.FirestoreMappedBean;
+import co.cmatts.gcp.firestore.model.Person;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FirestoreCollectionsBenchmark {
+    private static final String COLLECTION_NAME_PREFIX = "firestore.example.";
+
+    private Firestore firestore;
+    private FirestoreCollections collections;
+
+    @Setup
+    public void setup() {
+        firestore = FirestoreOptions.newBuilder()
+                .setProjectId("benchmark")
+                .setHost("localhost:8080")
+                .setCredentials(NoCredentials.getInstance())
+                .build()
+                .getService();
+        collections = new FirestoreCollections(firestore, COLLECTION_NAME_PREFIX, asList(Person.class, Fact.class));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        firestore.close();
+    }
+
+    @Benchmark
+    public CollectionReference reflectiveLookup() {
+        return reflectiveCollection(Person.class);
+    }
+
+    @Benchmark
+    public CollectionReference cachedLookup() {
+        return collections.get(Person.class);
+    }
+
+    private CollectionReference reflectiveCollection(Class<? extends FirestoreMappedBean> collectionClass) {
+        String collectionName;
+        try {
+            FirestoreMappedBean instance = collectionClass.getDeclaredConstructor().newInstance();
+            collectionName = COLLECTION_NAME_PREFIX + instance.tableName();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("getFirestoreCollection expects a FirestoreMappedBean");
+        }
+        return firestore.collection(collectionName);
+    }
+}
@@ -2,7 +2,9 @@ package co.cmatts.gcp.firestore;
 
 import co.cmatts.gcp.firestore.model.Fact;
 import co.cmatts.gcp.firestore.model.Person;
+import co.cmatts.gcp.firestore.model.PersonSummary;
 import co.cmatts.gcp.firestore.model.Siblings;
+import com.google.common.cache.CacheStats;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,12 +15,15 @@ import uk.org.webcompere.systemstubs.jupiter.SystemStub;
 import uk.org.webcompere.systemstubs.jupiter.SystemStubsExtension;
 import uk.org.webcompere.systemstubs.properties.SystemProperties;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static co.cmatts.gcp.firestore.FirestoreTestDataFactory.*;
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @Testcontainers
 @ExtendWith(SystemStubsExtension.class)
@@ -38,6 +43,7 @@ class FirestoreRepositoryTest {
                 .set("local.firestore.url", localFirestore.getEmulatorEndpoint())
                 .set("local.project", "test-project");
 
+        FirestoreRepository.resetFirestoreClient();
         repo = new FirestoreRepository();
         repo.load(peopleDataList(), factDataList());
     }
@@ -124,4 +130,220 @@ class FirestoreRepositoryTest {
         assertThat(updatedPerson.toString()).isEqualTo(person.toString());
         assertThat(updatedFact.toString()).isEqualTo(fact.toString());
     }
+
+    @Test
+    void shouldBulkLoadEntitiesWithConcurrentBatches() throws Exception {
+        BulkLoadResult result = repo.bulkLoad(7, 3, factDataList("bulk", 60));
+
+        assertThat(result.isSuccessful()).isTrue();
+        assertThat(result.getDocumentsLoaded()).isEqualTo(60);
+        assertThat(result.documentsPerSecond()).isPositive();
+        assertThat(repo.findFacts("bulk")).hasSize(60);
+    }
+
+    @Test
+    void shouldRejectBulkLoadBatchSizeAboveLimit() {
+        assertThatThrownBy(() -> repo.bulkLoad(FirestoreRepository.MAX_BATCH_SIZE + 1, 1, factDataList("bulk", 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldIngestStreamOfEntities() throws Exception {
+        IngestResult result = repo.ingest(factDataList("ingest", 120).stream());
+
+        assertThat(result.isSuccessful()).isTrue();
+        assertThat(result.getDocumentsWritten()).isEqualTo(120);
+        assertThat(repo.findFacts("ingest")).hasSize(120);
+    }
+
+    @Test
+    void shouldIngestWithFewerOutstandingWritesThanBulkWriterBatch() throws Exception {
+        IngestResult result = repo.ingest(factDataList("ingestSmallWindow", 30).iterator(), IngestConfig.builder()
+                .maxOutstandingWrites(5)
+                .build());
+
+        assertThat(result.isSuccessful()).isTrue();
+        assertThat(result.getDocumentsWritten()).isEqualTo(30);
+        assertThat(repo.findFacts("ingestSmallWindow")).hasSize(30);
+    }
+
+    @Test
+    void shouldServeRepeatedPersonLookupsFromCache() throws Exception {
+        FirestoreRepository cachedRepo = new FirestoreRepository(CacheConfig.builder().build());
+
+        Person first = cachedRepo.findPerson("2").get();
+        first.setName("Changed by caller");
+        Person second = cachedRepo.findPerson("2").get();
+
+        assertThat(second.toString()).isEqualTo(person(2).toString());
+        CacheStats stats = cachedRepo.personCacheStats().get();
+        assertThat(stats.missCount()).isEqualTo(1);
+        assertThat(stats.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldInvalidateCachedPersonOnUpdate() throws Exception {
+        FirestoreRepository cachedRepo = new FirestoreRepository(CacheConfig.builder().build());
+
+        Person person = cachedRepo.findPerson("13").get();
+        person.setYearOfDeath(2000);
+        cachedRepo.updateEntities(asList(person));
+
+        assertThat(cachedRepo.findPerson("13").get().getYearOfDeath()).isEqualTo(2000);
+    }
+
+    @Test
+    void shouldNotCacheReadsThatStartedBeforeAWrite() throws Exception {
+        FirestoreRepository cachedRepo = new FirestoreRepository(CacheConfig.builder().build());
+
+        long readGeneration = cachedRepo.cacheGeneration();
+        Person staleRead = person(14);
+        cachedRepo.invalidateCachedEntities(asList(staleRead));
+        cachedRepo.cachePerson(staleRead, readGeneration);
+
+        assertThat(cachedRepo.findCachedPerson("14")).isEmpty();
+    }
+
+    @Test
+    void shouldStreamAllPeopleSortedInPages() throws Exception {
+        List<String> names = repo.streamPeople(5)
+                .map(Person::getName)
+                .collect(Collectors.toList());
+
+        assertThat(names).hasSize(peopleCount());
+        assertThat(names).isSorted();
+        assertThat(names).containsExactlyElementsOf(repo.findPeople().stream()
+                .map(Person::getName)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void shouldFindPersonSummariesByFather() throws Exception {
+        List<PersonSummary> summaries = repo.findPersonSummariesByFather("19");
+
+        assertThat(summaries).containsExactlyInAnyOrder(
+                new PersonSummary("10", 1900, "19", "17"),
+                new PersonSummary("11", 1890, "19", "17"));
+        assertThat(summaries).extracting(PersonSummary::getYearOfBirth).containsExactlyInAnyOrder(1900, 1890);
+    }
+
+    @Test
+    void shouldFindPersonSummariesByMother() throws Exception {
+        List<PersonSummary> summaries = repo.findPersonSummariesByMother("21");
+
+        assertThat(summaries).extracting(PersonSummary::getId).containsExactlyInAnyOrder("5", "6");
+        assertThat(summaries).extracting(PersonSummary::getFatherId).containsOnly("16");
+    }
+
+    @Test
+    void shouldFindAncestorsByGeneration() throws Exception {
+        List<List<Person>> ancestors = repo.findAncestors("1", 5);
+
+        assertThat(ancestors).hasSize(1);
+        assertThat(ancestors.get(0)).extracting(Person::getId).containsExactly("16", "17");
+    }
+
+    @Test
+    void shouldFindDescendantsByGeneration() throws Exception {
+        List<List<Person>> descendants = repo.findDescendants("14", 5);
+
+        assertThat(descendants).hasSize(1);
+        assertThat(descendants.get(0)).extracting(Person::getId).containsExactly("13");
+    }
+
+    @Test
+    void shouldLimitDescendantsToMaxDepth() throws Exception {
+        List<List<Person>> descendants = repo.findDescendants("17", 1);
+
+        assertThat(descendants).hasSize(1);
+        assertThat(descendants.get(0)).extracting(Person::getId)
+                .containsExactly("1", "10", "11", "12", "2", "8", "9");
+    }
+
+    @Test
+    void shouldRejectTraversalWithoutDepth() {
+        assertThatThrownBy(() -> repo.findAncestors("1", 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldFindDescendantsAcrossSeveralGenerations() throws Exception {
+        List<Person> family = asList(
+                relative("g1", null),
+                relative("g2a", "g1"),
+                relative("g2b", "g1"),
+                relative("g3a", "g2a"),
+                relative("g3b", "g2b"),
+                relative("g4", "g3a"));
+        repo.load(family);
+        try {
+            List<List<Person>> descendants = repo.findDescendants("g1", 5);
+            assertThat(descendants).hasSize(3);
+            assertThat(descendants.get(0)).extracting(Person::getId).containsExactly("g2a", "g2b");
+            assertThat(descendants.get(1)).extracting(Person::getId).containsExactly("g3a", "g3b");
+            assertThat(descendants.get(2)).extracting(Person::getId).containsExactly("g4");
+
+            assertThat(repo.findDescendants("g1", 2)).hasSize(2);
+
+            List<List<Person>> ancestors = repo.findAncestors("g4", 5);
+            assertThat(ancestors).extracting(generation -> generation.get(0).getId())
+                    .containsExactly("g3a", "g2a", "g1");
+        } finally {
+            delete(family);
+        }
+    }
+
+    @Test
+    void shouldQueryChildrenOfMoreParentsThanOneInFilterAllows() throws Exception {
+        List<Person> family = new ArrayList<>(List.of(relative("w", null)));
+        for (int i = 0; i < 31; i++) {
+            String parentId = String.format("w%02d", i);
+            family.add(relative(parentId, "w"));
+            family.add(relative(parentId + "x", parentId));
+        }
+        repo.load(family);
+        try {
+            List<List<Person>> descendants = repo.findDescendants("w", 5);
+            assertThat(descendants).hasSize(2);
+            assertThat(descendants.get(0)).hasSize(31);
+            assertThat(descendants.get(1)).hasSize(31)
+                    .extracting(Person::getId)
+                    .allMatch(id -> id.endsWith("x"));
+        } finally {
+            delete(family);
+        }
+    }
+
+    @Test
+    void shouldPruneVisitedPeopleInCyclicRelationships() throws Exception {
+        List<Person> cycle = asList(
+                relative("c1", "c2"),
+                relative("c2", "c1"));
+        repo.load(cycle);
+        try {
+            List<List<Person>> descendants = repo.findDescendants("c1", 10);
+            assertThat(descendants).hasSize(1);
+            assertThat(descendants.get(0)).extracting(Person::getId).containsExactly("c2");
+
+            List<List<Person>> ancestors = repo.findAncestors("c1", 10);
+            assertThat(ancestors).hasSize(1);
+            assertThat(ancestors.get(0)).extracting(Person::getId).containsExactly("c2");
+        } finally {
+            delete(cycle);
+        }
+    }
+
+    private static Person relative(String id, String fatherId) {
+        return Person.builder()
+                .id(id)
+                .name("Relative " + id)
+                .fatherId(fatherId)
+                .yearOfBirth(1950)
+                .build();
+    }
+
+    private static void delete(List<Person> people) throws Exception {
+        for (Person person : people) {
+            repo.getFirestoreCollection(Person.class).document(person.getId()).delete().get();
+        }
+    }
 }
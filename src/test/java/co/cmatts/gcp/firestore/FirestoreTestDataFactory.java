@@ -104,6 +104,17 @@ public class FirestoreTestDataFactory {
                 .build();
     }
 
+    public static List<Fact> factDataList(String personId, int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> Fact.builder()
+                        .id(personId + "-" + i)
+                        .personId(personId)
+                        .year(1900 + i)
+                        .description("fact" + i)
+                        .build())
+                .collect(Collectors.toList());
+    }
+
     public static int peopleCount() {
         return PEOPLE_DATA.length;
     }
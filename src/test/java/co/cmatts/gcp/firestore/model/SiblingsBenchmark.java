@@ -0,0 +1,52 @@
+package co.cmatts.gcp.firestore.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptyList;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SiblingsBenchmark {
+    private static final String[] PARENT_IDS = {null, "14", "15", "16", "17", "18", "19"};
+
+    @Param({"10", "100", "1000"})
+    private int familySize;
+
+    private Person person;
+    private Set<Person> allSiblings;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        allSiblings = new HashSet<>();
+        for (int i = 0; i < familySize; i++) {
+            allSiblings.add(Person.builder()
+                    .id(Integer.toString(i))
+                    .fatherId(PARENT_IDS[random.nextInt(PARENT_IDS.length)])
+                    .motherId(PARENT_IDS[random.nextInt(PARENT_IDS.length)])
+                    .yearOfBirth(1880 + random.nextInt(20))
+                    .build());
+        }
+        person = new ArrayList<>(allSiblings).get(0);
+    }
+
+    @Benchmark
+    public Siblings legacyClassification() {
+        return LegacySiblings.classify(person, allSiblings, emptyList());
+    }
+
+    @Benchmark
+    public Siblings singlePassClassification() {
+        return new Siblings(person, allSiblings, emptyList());
+    }
+}
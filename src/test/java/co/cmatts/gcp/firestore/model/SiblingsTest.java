@@ -0,0 +1,63 @@
+package co.cmatts.gcp.firestore.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SiblingsTest {
+    private static final String[] PARENT_IDS = {null, "14", "15", "16", "17", "18", "19"};
+
+    @Test
+    void shouldClassifySiblingsIdenticallyToLegacyImplementation() {
+        for (long seed = 0; seed < 1000; seed++) {
+            Random random = new Random(seed);
+            Set<Person> allSiblings = randomFamily(random);
+            Person person = new ArrayList<>(allSiblings).get(random.nextInt(allSiblings.size()));
+
+            assertThat(new Siblings(person, allSiblings, emptyList()))
+                    .as("seed %d", seed)
+                    .isEqualTo(LegacySiblings.classify(person, allSiblings, emptyList()));
+        }
+    }
+
+    @Test
+    void shouldOrderMissingParentsAndYearsFirst() {
+        Person person = person("1", "16", "17", 1900);
+        Person noYear = person("2", "16", "17", null);
+        Person noMother = person("3", "16", null, 1910);
+        Person otherMother = person("4", "16", "20", 1890);
+        Set<Person> allSiblings = new HashSet<>(asList(person, noYear, noMother, otherMother));
+
+        Siblings siblings = new Siblings(person, allSiblings, emptyList());
+
+        assertThat(siblings.getFullSiblings()).containsExactly(noYear, person);
+        assertThat(siblings.getStepByFather()).containsExactly(noMother, otherMother);
+        assertThat(siblings.getStepByMother()).isEmpty();
+    }
+
+    private static Set<Person> randomFamily(Random random) {
+        int size = 1 + random.nextInt(30);
+        Set<Person> family = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            family.add(person(Integer.toString(random.nextInt(1000)),
+                    PARENT_IDS[random.nextInt(PARENT_IDS.length)],
+                    PARENT_IDS[random.nextInt(PARENT_IDS.length)],
+                    1880 + random.nextInt(20)));
+        }
+        return family;
+    }
+
+    private static Person person(String id, String fatherId, String motherId, Integer yearOfBirth) {
+        return Person.builder()
+                .id(id)
+                .name("Person " + id)
+                .fatherId(fatherId)
+                .motherId(motherId)
+                .yearOfBirth(yearOfBirth)
+                .build();
+    }
+}
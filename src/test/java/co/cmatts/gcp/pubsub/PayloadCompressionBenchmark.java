@@ -0,0 +1,52 @@
+package co.cmatts.gcp.pubsub;
+
+import com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadCompressionBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    private int payloadSize;
+
+    private ByteString payload;
+    private ByteString compressed;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class BytesSaved {
+        public long bytesSaved;
+    }
+
+    @Setup
+    public void setup() {
+        StringBuilder content = new StringBuilder(payloadSize);
+        int i = 0;
+        while (content.length() < payloadSize) {
+            content.append("{\"id\":\"").append(i).append("\",\"name\":\"Mr Test").append(i % 25)
+                    .append("\",\"yearOfBirth\":").append(1880 + i % 40).append("}\n");
+            i++;
+        }
+        payload = ByteString.copyFromUtf8(content.substring(0, payloadSize));
+        compressed = PayloadCodec.gzip(payload);
+    }
+
+    @Benchmark
+    public ByteString compress(BytesSaved counter) {
+        ByteString result = PayloadCodec.gzip(payload);
+        counter.bytesSaved += payload.size() - result.size();
+        return result;
+    }
+
+    @Benchmark
+    public ByteString decompress() {
+        return PayloadCodec.gunzip(compressed);
+    }
+}
@@ -1,6 +1,14 @@
 package co.cmatts.gcp.pubsub;
 
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.batching.FlowController;
+import com.google.api.gax.rpc.TransportChannel;
+import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,9 +20,24 @@ import uk.org.webcompere.systemstubs.jupiter.SystemStub;
 import uk.org.webcompere.systemstubs.jupiter.SystemStubsExtension;
 import uk.org.webcompere.systemstubs.properties.SystemProperties;
 
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @Testcontainers
 @ExtendWith(SystemStubsExtension.class)
@@ -22,6 +45,11 @@ class PubSubClientTest {
     private static final String TEST_TOPIC = "myTopic";
     private static final String TEST_SUBSCRIPTION = "mySubscription";
     private static final String TEST_MESSAGE = "A test message";
+    private static final String ORDERED_TOPIC = "myOrderedTopic";
+    private static final String ORDERED_SUBSCRIPTION = "myOrderedSubscription";
+    private static final String ORDERING_KEY = "person-1";
+    private static final String DEAD_LETTER_TOPIC = "myDeadLetterTopic";
+    private static final String DEAD_LETTER_SUBSCRIPTION = "myDeadLetterSubscription";
 
     @SystemStub
     private static SystemProperties systemProperties;
@@ -35,6 +63,10 @@ class PubSubClientTest {
                 .set("local.pubsub.url", localPubSub.getEmulatorEndpoint())
                 .set("local.project", "test-project");
 
+        PubSubClient.configureChannelPool(ChannelPoolConfig.builder()
+                .poolSize(2)
+                .build());
+
         PubSubClient.createTopic(TEST_TOPIC);
         PubSubClient.createSubscription(TEST_TOPIC, TEST_SUBSCRIPTION);
     }
@@ -49,12 +81,297 @@ class PubSubClientTest {
         PubSubClient.purgeTopic(TEST_SUBSCRIPTION);
     }
 
+    @AfterEach
+    void resetPublisher() {
+        PubSubClient.configurePublisher(TEST_TOPIC, PublisherConfig.defaults());
+    }
+
     @Test
     void shouldPublishMessageAndReadMessage() throws Exception {
-        PubSubClient.publishMessage(TEST_TOPIC, TEST_MESSAGE);
+        String messageId = PubSubClient.publishMessage(TEST_TOPIC, TEST_MESSAGE).get();
+        assertThat(messageId).isNotEmpty();
 
         List<String> receivedMessages = PubSubClient.readMessage(TEST_SUBSCRIPTION);
         assertThat(receivedMessages).hasSize(1);
         assertThat(receivedMessages.get(0)).isEqualTo(TEST_MESSAGE);
     }
+
+    @Test
+    void shouldPublishMessagesWithConfiguredBatching() throws Exception {
+        PubSubClient.configurePublisher(TEST_TOPIC, PublisherConfig.builder()
+                .elementCountThreshold(10)
+                .requestByteThreshold(10_000)
+                .delayThreshold(Duration.ofMillis(50))
+                .maxOutstandingElementCount(100L)
+                .build());
+        List<String> messages = IntStream.range(0, 25)
+                .mapToObj(i -> TEST_MESSAGE + i)
+                .collect(Collectors.toList());
+
+        List<String> messageIds = PubSubClient.publishMessages(TEST_TOPIC, messages);
+
+        assertThat(messageIds).hasSize(25).doesNotHaveDuplicates();
+        assertThat(PubSubClient.readMessage(TEST_SUBSCRIPTION)).isNotEmpty().isSubsetOf(messages);
+    }
+
+    @Test
+    void shouldShareOneChannelPoolAndCloseItOnShutdown() throws Exception {
+        TransportChannel channel = PubSubClient.getTransportChannel();
+
+        PubSubClient.publishMessage(TEST_TOPIC, TEST_MESSAGE).get();
+        PubSubClient.pullMessages(TEST_SUBSCRIPTION, 10);
+        PubSubClient.purgeTopic(TEST_SUBSCRIPTION);
+        assertThat(PubSubClient.getTransportChannel()).isSameAs(channel);
+
+        PubSubClient.shutdown();
+
+        assertThat(channel.isShutdown()).isTrue();
+        assertThat(PubSubClient.getTransportChannel()).isNotSameAs(channel);
+    }
+
+    @Test
+    void shouldHoldMessagesUntilBatchThresholdIsReached() throws Exception {
+        PubSubClient.configurePublisher(TEST_TOPIC, PublisherConfig.builder()
+                .elementCountThreshold(5)
+                .requestByteThreshold(1_000_000)
+                .delayThreshold(Duration.ofSeconds(30))
+                .build());
+
+        List<ApiFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(PubSubClient.publishMessage(TEST_TOPIC, TEST_MESSAGE + i));
+        }
+        Thread.sleep(500);
+        assertThat(futures).noneMatch(Future::isDone);
+
+        futures.add(PubSubClient.publishMessage(TEST_TOPIC, TEST_MESSAGE + 4));
+        assertThat(ApiFutures.allAsList(futures).get(10, TimeUnit.SECONDS)).hasSize(5).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void shouldFailPublishesBeyondFlowControlLimit() throws Exception {
+        PubSubClient.configurePublisher(TEST_TOPIC, PublisherConfig.builder()
+                .elementCountThreshold(100)
+                .delayThreshold(Duration.ofSeconds(30))
+                .maxOutstandingElementCount(3L)
+                .limitExceededBehavior(FlowController.LimitExceededBehavior.ThrowException)
+                .build());
+
+        for (int i = 0; i < 3; i++) {
+            PubSubClient.publishMessage(TEST_TOPIC, TEST_MESSAGE + i);
+        }
+        ApiFuture<String> rejected = PubSubClient.publishMessage(TEST_TOPIC, TEST_MESSAGE + 3);
+
+        assertThatThrownBy(() -> rejected.get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(FlowController.FlowControlException.class);
+    }
+
+    @Test
+    void shouldConsumeMessagesWithStreamingPullSubscriber() throws Exception {
+        List<String> messages = IntStream.range(0, 10)
+                .mapToObj(i -> TEST_MESSAGE + i)
+                .collect(Collectors.toList());
+        Set<String> received = ConcurrentHashMap.newKeySet();
+        CountDownLatch latch = new CountDownLatch(messages.size());
+
+        Subscriber subscriber = PubSubClient.subscribe(TEST_SUBSCRIPTION, message -> {
+            if (received.add(message.getData().toStringUtf8())) {
+                latch.countDown();
+            }
+            return true;
+        }, SubscriberConfig.builder().parallelPullCount(2).executorThreadCount(2).build());
+        try {
+            PubSubClient.publishMessages(TEST_TOPIC, messages);
+
+            assertThat(latch.await(30, TimeUnit.SECONDS)).isTrue();
+            assertThat(received).containsExactlyInAnyOrderElementsOf(messages);
+        } finally {
+            PubSubClient.unsubscribe(subscriber);
+        }
+    }
+
+    @Test
+    void shouldPullMessageEnvelopesAndAcknowledge() throws Exception {
+        PubSubClient.publishMessage(TEST_TOPIC, TEST_MESSAGE).get();
+
+        List<PulledMessage> pulled = PubSubClient.pullMessages(TEST_SUBSCRIPTION, 10);
+        assertThat(pulled).hasSize(1);
+        assertThat(pulled.get(0).getDataAsString()).isEqualTo(TEST_MESSAGE);
+        assertThat(pulled.get(0).getAckId()).isNotEmpty();
+        assertThat(pulled.get(0).getPublishTime()).isNotNull();
+
+        PubSubClient.modifyAckDeadline(TEST_SUBSCRIPTION, List.of(pulled.get(0).getAckId()), 30);
+        PubSubClient.acknowledge(TEST_SUBSCRIPTION, List.of(pulled.get(0).getAckId()));
+        assertThat(PubSubClient.pullMessages(TEST_SUBSCRIPTION, 10)).isEmpty();
+    }
+
+    @Test
+    void shouldProcessBatchAndAcknowledgeOnce() throws Exception {
+        PubSubClient.publishMessages(TEST_TOPIC, List.of(TEST_MESSAGE + 1, TEST_MESSAGE + 2));
+        List<String> processed = new ArrayList<>();
+        List<String> redelivered = new ArrayList<>();
+
+        int count = PubSubClient.processBatch(TEST_SUBSCRIPTION, 10, 2, messages -> {
+            // outlive the 2 second deadline several times over, the lease extension must stop redelivery
+            Thread.sleep(5000);
+            Set<String> batchIds = messages.stream().map(PulledMessage::getMessageId).collect(Collectors.toSet());
+            PubSubClient.pullMessages(TEST_SUBSCRIPTION, 10).stream()
+                    .map(PulledMessage::getMessageId)
+                    .filter(batchIds::contains)
+                    .forEach(redelivered::add);
+            messages.forEach(m -> processed.add(m.getDataAsString()));
+        });
+
+        assertThat(count).isEqualTo(processed.size()).isPositive();
+        assertThat(processed).isSubsetOf(TEST_MESSAGE + 1, TEST_MESSAGE + 2);
+        assertThat(redelivered).isEmpty();
+    }
+
+    @Test
+    void shouldProcessBatchAroundUndecodableMessage() throws Exception {
+        PubSubClient.getPublisher(TEST_TOPIC).publish(PubsubMessage.newBuilder()
+                .setData(ByteString.copyFromUtf8("not gzip"))
+                .putAttributes(PayloadCodec.CONTENT_ENCODING_ATTRIBUTE, PayloadCodec.GZIP_ENCODING)
+                .build()).get();
+        PubSubClient.publishMessage(TEST_TOPIC, TEST_MESSAGE).get();
+        List<String> processed = new ArrayList<>();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (processed.isEmpty() && System.nanoTime() < deadline) {
+            PubSubClient.processBatch(TEST_SUBSCRIPTION, 10, 10,
+                    messages -> messages.forEach(m -> processed.add(m.getDataAsString())));
+        }
+
+        assertThat(processed).containsExactly(TEST_MESSAGE);
+    }
+
+    @Test
+    void shouldPublishAndReadBinaryMessage() throws Exception {
+        byte[] payload = {0, 1, 2, (byte) 0xFF, (byte) 0xFE, 127, -128};
+        PubSubClient.publishMessage(TEST_TOPIC, ByteBuffer.wrap(payload)).get();
+
+        List<ByteBuffer> receivedMessages = PubSubClient.readMessageBytes(TEST_SUBSCRIPTION);
+        assertThat(receivedMessages).hasSize(1);
+
+        ByteBuffer received = receivedMessages.get(0);
+        assertThat(received.isReadOnly()).isTrue();
+        byte[] actual = new byte[received.remaining()];
+        received.get(actual);
+        assertThat(actual).isEqualTo(payload);
+    }
+
+    @Test
+    void shouldDeliverOrderedMessagesInPublishOrder() throws Exception {
+        PubSubClient.createTopic(ORDERED_TOPIC);
+        PubSubClient.createSubscription(ORDERED_TOPIC, ORDERED_SUBSCRIPTION, SubscriptionConfig.builder()
+                .enableMessageOrdering(true)
+                .build());
+        List<String> messages = IntStream.range(0, 10)
+                .mapToObj(i -> TEST_MESSAGE + i)
+                .collect(Collectors.toList());
+
+        List<ApiFuture<String>> futures = new ArrayList<>();
+        for (String message : messages) {
+            futures.add(PubSubClient.publishOrderedMessage(ORDERED_TOPIC, ORDERING_KEY, message));
+        }
+        ApiFutures.allAsList(futures).get();
+
+        List<String> received = PubSubClient.pullMessages(ORDERED_SUBSCRIPTION, 100).stream()
+                .map(PulledMessage::getDataAsString)
+                .collect(Collectors.toList());
+        assertThat(received).isNotEmpty();
+        assertThat(received).isSortedAccordingTo(Comparator.comparingInt(messages::indexOf));
+
+        OrderingKeyMetrics metrics = PubSubClient.orderingKeyMetrics(ORDERED_TOPIC).get(ORDERING_KEY);
+        assertThat(metrics.getPublished()).isEqualTo(messages.size());
+        assertThat(metrics.getInFlight()).isZero();
+        assertThat(metrics.getMaxLatency()).isPositive();
+
+        PubSubClient.publishOrderedMessage(TEST_TOPIC, ORDERING_KEY, TEST_MESSAGE).get();
+        assertThat(PubSubClient.orderingKeyMetrics(TEST_TOPIC).get(ORDERING_KEY).getPublished()).isEqualTo(1);
+        assertThat(PubSubClient.orderingKeyMetrics(ORDERED_TOPIC).get(ORDERING_KEY).getPublished()).isEqualTo(messages.size());
+    }
+
+    @Test
+    void shouldCompressLargeMessagesAndDecompressOnRead() throws Exception {
+        PubSubClient.configurePublisher(TEST_TOPIC, PublisherConfig.builder()
+                .compression(PayloadCompression.GZIP)
+                .build());
+        String largeMessage = TEST_MESSAGE.repeat(1000);
+        try {
+            PubSubClient.publishMessage(TEST_TOPIC, largeMessage).get();
+
+            List<PulledMessage> pulled = PubSubClient.pullMessages(TEST_SUBSCRIPTION, 10);
+            assertThat(pulled).hasSize(1);
+            assertThat(pulled.get(0).getDataAsString()).isEqualTo(largeMessage);
+            assertThat(pulled.get(0).getAttributes()).doesNotContainKey("content-encoding");
+        } finally {
+            PubSubClient.configurePublisher(TEST_TOPIC, PublisherConfig.defaults());
+        }
+    }
+
+    @Test
+    void shouldRejectPayloadsThatDecompressBeyondLimit() {
+        ByteString bomb = PayloadCodec.gzip(ByteString.copyFrom(new byte[1_000_000]));
+
+        assertThat(PayloadCodec.gunzip(bomb, 1_000_000).size()).isEqualTo(1_000_000);
+        assertThatThrownBy(() -> PayloadCodec.gunzip(bomb, 999_999))
+                .isInstanceOf(UncheckedIOException.class)
+                .hasMessageContaining("exceeds the limit");
+    }
+
+    @Test
+    void shouldRejectMessagesAboveSizeLimit() {
+        ByteBuffer tooLarge = ByteBuffer.allocate(10_000_001);
+
+        assertThatThrownBy(() -> PubSubClient.publishMessage(TEST_TOPIC, tooLarge))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("exceeds the Pub/Sub limit");
+    }
+
+    @Test
+    void shouldRouteRepeatedlyFailingMessagesToDeadLetterTopic() throws Exception {
+        PubSubClient.createTopic(DEAD_LETTER_TOPIC);
+        PubSubClient.createSubscription(DEAD_LETTER_TOPIC, DEAD_LETTER_SUBSCRIPTION);
+        AtomicInteger attempts = new AtomicInteger();
+
+        Subscriber subscriber = PubSubClient.subscribe(TEST_SUBSCRIPTION, message -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("poison message");
+        }, SubscriberConfig.builder()
+                .deadLetter(DeadLetterConfig.builder()
+                        .topicId(DEAD_LETTER_TOPIC)
+                        .maxDeliveryAttempts(5)
+                        .build())
+                .build());
+        try {
+            PubSubClient.publishMessage(TEST_TOPIC, TEST_MESSAGE).get();
+
+            List<PulledMessage> deadLetters = new ArrayList<>();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (deadLetters.isEmpty() && System.nanoTime() < deadline) {
+                deadLetters.addAll(PubSubClient.pullMessages(DEAD_LETTER_SUBSCRIPTION, 10));
+            }
+
+            assertThat(deadLetters).hasSize(1);
+            assertThat(deadLetters.get(0).getDataAsString()).isEqualTo(TEST_MESSAGE);
+            assertThat(deadLetters.get(0).getAttributes())
+                    .containsEntry(PubSubClient.DEAD_LETTER_SOURCE_ATTRIBUTE, TEST_SUBSCRIPTION)
+                    .containsEntry(PubSubClient.DEAD_LETTER_ATTEMPTS_ATTRIBUTE, "5");
+            assertThat(attempts).hasValue(5);
+        } finally {
+            PubSubClient.unsubscribe(subscriber);
+        }
+    }
+
+    @Test
+    void shouldRejectDeliveryAttemptsOutsideServerLimits() {
+        assertThatThrownBy(() -> DeadLetterConfig.builder().topicId(DEAD_LETTER_TOPIC).maxDeliveryAttempts(4).build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("maxDeliveryAttempts");
+        assertThatThrownBy(() -> DeadLetterConfig.builder().topicId(DEAD_LETTER_TOPIC).maxDeliveryAttempts(101).build())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(DeadLetterConfig.builder().topicId(DEAD_LETTER_TOPIC).build().getMaxDeliveryAttempts()).isEqualTo(5);
+    }
 }
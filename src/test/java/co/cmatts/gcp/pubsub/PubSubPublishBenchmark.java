@@ -0,0 +1,70 @@
+package co.cmatts.gcp.pubsub;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import com.google.pubsub.v1.TopicName;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.testcontainers.containers.PubSubEmulatorContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class PubSubPublishBenchmark {
+    private static final String TEST_TOPIC = "benchmarkTopic";
+    private static final String TEST_MESSAGE = "A benchmark message";
+
+    private PubSubEmulatorContainer localPubSub;
+    private ManagedChannel legacyChannel;
+
+    @Setup
+    public void setup() throws Exception {
+        localPubSub = new PubSubEmulatorContainer(
+                DockerImageName.parse("gcr.io/google.com/cloudsdktool/google-cloud-cli:441.0.0-emulators"));
+        localPubSub.start();
+        System.setProperty("local.pubsub.url", localPubSub.getEmulatorEndpoint());
+        System.setProperty("local.project", "test-project");
+
+        legacyChannel = ManagedChannelBuilder.forTarget(localPubSub.getEmulatorEndpoint()).usePlaintext().build();
+        PubSubClient.createTopic(TEST_TOPIC);
+    }
+
+    @TearDown
+    public void tearDown() {
+        PubSubClient.shutdown();
+        legacyChannel.shutdown();
+        localPubSub.stop();
+    }
+
+    @Benchmark
+    public String publishWithNewPublisherPerMessage() throws Exception {
+        Publisher publisher = Publisher.newBuilder(TopicName.of("test-project", TEST_TOPIC))
+                .setChannelProvider(FixedTransportChannelProvider.create(GrpcTransportChannel.create(legacyChannel)))
+                .setCredentialsProvider(NoCredentialsProvider.create())
+                .build();
+        try {
+            return publisher.publish(PubsubMessage.newBuilder()
+                    .setData(ByteString.copyFromUtf8(TEST_MESSAGE))
+                    .build()).get();
+        } finally {
+            publisher.shutdown();
+            publisher.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    @Benchmark
+    public String publishWithCachedPublisher() throws Exception {
+        return PubSubClient.publishMessage(TEST_TOPIC, TEST_MESSAGE).get();
+    }
+}
@@ -1,8 +1,11 @@
 package co.cmatts.gcp.storage;
 
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.Storage;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
@@ -10,17 +13,31 @@ import uk.org.webcompere.systemstubs.jupiter.SystemStub;
 import uk.org.webcompere.systemstubs.jupiter.SystemStubsExtension;
 import uk.org.webcompere.systemstubs.properties.SystemProperties;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static co.cmatts.gcp.storage.StorageClient.*;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @Testcontainers
 @ExtendWith(SystemStubsExtension.class)
@@ -31,6 +48,9 @@ public class StorageClientTest {
     @SystemStub
     private static SystemProperties systemProperties;
 
+    @TempDir
+    Path tempDir;
+
     @Container
     static final GenericContainer<?> localGCS = new GenericContainer<>("fsouza/fake-gcs-server")
             .withExposedPorts(4443)
@@ -57,6 +77,56 @@ public class StorageClientTest {
         assertThat(bucketExists(TEST_BUCKET)).isTrue();
     }
 
+    @Test
+    void shouldReportMissingBucketWithoutError() {
+        assertThat(bucketExists("missingbucket")).isFalse();
+    }
+
+    @Test
+    void shouldCheckExistenceOfManyKeys() throws Exception {
+        writeToBucket(TEST_BUCKET, "batch/a.txt", TEST_CONTENT);
+        writeToBucket(TEST_BUCKET, "batch/nested/b.txt", TEST_CONTENT);
+        writeToBucket(TEST_BUCKET, "root.txt", TEST_CONTENT);
+
+        Map<String, Boolean> exists = existsAll(TEST_BUCKET,
+                List.of("batch/a.txt", "batch/nested/b.txt", "root.txt", "batch/missing.txt", "missing.txt"));
+
+        assertThat(exists)
+                .containsEntry("batch/a.txt", true)
+                .containsEntry("batch/nested/b.txt", true)
+                .containsEntry("root.txt", true)
+                .containsEntry("batch/missing.txt", false)
+                .containsEntry("missing.txt", false);
+    }
+
+    @Test
+    void shouldGetMetadataOfManyKeys() throws Exception {
+        writeToBucket(TEST_BUCKET, "metadata/a.json", TEST_CONTENT, "application/json");
+        writeToBucket(TEST_BUCKET, "metadata/b.txt", TEST_CONTENT);
+
+        Map<String, Blob> metadata = getMetadata(TEST_BUCKET, List.of("metadata/a.json", "metadata/b.txt", "metadata/c.txt"));
+
+        assertThat(metadata).containsOnlyKeys("metadata/a.json", "metadata/b.txt");
+        assertThat(metadata.get("metadata/a.json").getContentType()).isEqualTo("application/json");
+        assertThat(metadata.get("metadata/b.txt").getSize()).isEqualTo((long) TEST_CONTENT.length());
+    }
+
+    @Test
+    void shouldFindKeysWithinRangeOfLargerDirectory() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            writeToBucket(TEST_BUCKET, String.format("range/file%02d.txt", i), TEST_CONTENT);
+        }
+
+        Map<String, Boolean> exists = existsAll(TEST_BUCKET,
+                List.of("range/file05.txt", "range/file07.txt", "range/file06x.txt", "range/file09.txt"));
+
+        assertThat(exists)
+                .containsEntry("range/file05.txt", true)
+                .containsEntry("range/file07.txt", true)
+                .containsEntry("range/file06x.txt", false)
+                .containsEntry("range/file09.txt", true);
+    }
+
     @Test
     void shouldWriteFileToBucket() throws Exception {
         String bucket = "mybucket";
@@ -76,6 +146,84 @@ public class StorageClientTest {
         assertThat(fileExists(bucket, key)).isTrue();
     }
 
+    @Test
+    void shouldWriteNonAsciiStringAsUtf8() throws Exception {
+        String key = "/test/resources/utf8.txt";
+        String content = "{ \"name\": \"Zoë Ångström\" }";
+        writeToBucket(TEST_BUCKET, key, content, "application/json");
+
+        try (InputStream storageInputStream = readFromBucket(TEST_BUCKET, key)) {
+            assertThat(new String(storageInputStream.readAllBytes(), UTF_8)).isEqualTo(content);
+        }
+        assertThat(getStorageClient().get(TEST_BUCKET, key).getContentType()).isEqualTo("application/json");
+    }
+
+    @Test
+    void shouldStreamInputStreamToBucket() throws Exception {
+        String key = "/test/resources/stream.bin";
+        byte[] content = randomBytes(600 * 1024 + 5);
+
+        writeToBucket(TEST_BUCKET, key, new ByteArrayInputStream(content), "application/octet-stream", 256 * 1024);
+
+        try (InputStream storageInputStream = readFromBucket(TEST_BUCKET, key)) {
+            assertThat(storageInputStream.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    void shouldStreamGeneratedContentToBucket() throws Exception {
+        String key = "/test/resources/report.csv";
+        int rows = 20_000;
+
+        writeToBucket(TEST_BUCKET, key, out -> {
+            Writer writer = new OutputStreamWriter(out, UTF_8);
+            for (int i = 0; i < rows; i++) {
+                writer.write("row-" + i + "," + i + "\n");
+            }
+            writer.flush();
+        }, "text/csv", 256 * 1024);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(readFromBucket(TEST_BUCKET, key), UTF_8))) {
+            assertThat(reader.lines().count()).isEqualTo(rows);
+        }
+    }
+
+    @Test
+    void shouldNotCommitObjectWhenContentWriterFails() {
+        String key = "/test/resources/failedReport.csv";
+
+        assertThatThrownBy(() -> writeToBucket(TEST_BUCKET, key, out -> {
+            out.write("partial,row\n".getBytes(UTF_8));
+            throw new IOException("report generation failed");
+        }, "text/csv", 256 * 1024))
+                .isInstanceOf(IOException.class)
+                .hasMessage("report generation failed");
+
+        assertThat(fileExists(TEST_BUCKET, key)).isFalse();
+    }
+
+    @Test
+    void shouldRejectInvalidChunkSize() {
+        assertThatThrownBy(() -> writeToBucket(TEST_BUCKET, "/test/resources/invalid.bin",
+                new ByteArrayInputStream(new byte[10]), "application/octet-stream", 1000))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldRejectInvalidTransferConfig() {
+        Path localFile = tempDir.resolve("invalid.bin");
+
+        assertThatThrownBy(() -> writeToBucket(TEST_BUCKET, "/test/resources/invalid.bin", localFile,
+                TransferConfig.builder().partSize(0).build()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> writeToBucket(TEST_BUCKET, "/test/resources/invalid.bin", localFile,
+                TransferConfig.builder().concurrency(0).build()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> readFromBucket(TEST_BUCKET, "/test/resources/invalid.bin", localFile,
+                TransferConfig.builder().chunkSize(1000).build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     void shouldReadFromBucket() throws Exception {
         String bucket = "mybucket";
@@ -88,6 +236,200 @@ public class StorageClientTest {
         }
     }
 
+    @Test
+    void shouldWriteFileContentWithoutStaleBytes() throws Exception {
+        String key = "/test/resources/singleStream.bin";
+        byte[] content = randomBytes(1_000_123);
+        Path localFile = Files.write(tempDir.resolve("singleStream.bin"), content);
+
+        writeToBucket(TEST_BUCKET, key, localFile);
+
+        try (InputStream storageInputStream = readFromBucket(TEST_BUCKET, key)) {
+            assertThat(storageInputStream.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    void shouldWriteLargeFileAsParallelCompositeUpload() throws Exception {
+        String key = "/test/resources/composite.bin";
+        byte[] content = randomBytes(35 * 32 * 1024 + 17);
+        Path localFile = Files.write(tempDir.resolve("composite.bin"), content);
+
+        writeToBucket(TEST_BUCKET, key, localFile, TransferConfig.builder()
+                .partSize(32 * 1024)
+                .concurrency(4)
+                .chunkSize(256 * 1024)
+                .build());
+
+        try (InputStream storageInputStream = readFromBucket(TEST_BUCKET, key)) {
+            assertThat(storageInputStream.readAllBytes()).isEqualTo(content);
+        }
+        assertThat(getStorageClient().list(TEST_BUCKET, Storage.BlobListOption.prefix(key)).iterateAll())
+                .extracting(Blob::getName)
+                .containsExactly(key);
+    }
+
+    @Test
+    void shouldWriteMemoryMappedFileToBucket() throws Exception {
+        String key = "/test/resources/mapped.bin";
+        byte[] content = randomBytes(3 * 256 * 1024 + 99);
+        Path localFile = Files.write(tempDir.resolve("mapped.bin"), content);
+
+        writeToBucketMapped(TEST_BUCKET, key, localFile, TransferConfig.builder()
+                .chunkSize(256 * 1024)
+                .build());
+
+        try (InputStream storageInputStream = readFromBucket(TEST_BUCKET, key)) {
+            assertThat(storageInputStream.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    void shouldDownloadFileInParallelRanges() throws Exception {
+        String key = "/test/resources/download.bin";
+        byte[] content = randomBytes(5 * 64 * 1024 + 321);
+        writeToBucket(TEST_BUCKET, key, Files.write(tempDir.resolve("upload.bin"), content));
+        Path destination = tempDir.resolve("download.bin");
+
+        readFromBucket(TEST_BUCKET, key, destination, TransferConfig.builder()
+                .partSize(64 * 1024)
+                .concurrency(3)
+                .chunkSize(256 * 1024)
+                .build());
+
+        assertThat(Files.readAllBytes(destination)).isEqualTo(content);
+    }
+
+    @Test
+    void shouldReadRangeFromBucket() throws Exception {
+        String key = "/test/resources/range.txt";
+        writeToBucket(TEST_BUCKET, key, TEST_CONTENT);
+
+        try (SeekableByteChannel channel = readFromBucket(TEST_BUCKET, key, 3, 7)) {
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            while (channel.read(buffer) >= 0) {
+                // read the whole range
+            }
+            buffer.flip();
+            assertThat(UTF_8.decode(buffer).toString()).isEqualTo(TEST_CONTENT.substring(3, 10));
+            assertThat(channel.size()).isEqualTo(7);
+        }
+    }
+
+    @Test
+    void shouldClampRangeToObjectSizeWithConfiguredChunkSize() throws Exception {
+        String key = "/test/resources/clampedRange.txt";
+        writeToBucket(TEST_BUCKET, key, TEST_CONTENT);
+
+        try (SeekableByteChannel channel = readFromBucket(TEST_BUCKET, key, 3, 1000, 256 * 1024)) {
+            ByteBuffer buffer = ByteBuffer.allocate(100);
+            while (channel.read(buffer) >= 0) {
+                // read the whole range
+            }
+            buffer.flip();
+            assertThat(UTF_8.decode(buffer).toString()).isEqualTo(TEST_CONTENT.substring(3));
+            assertThat(channel.size()).isEqualTo(TEST_CONTENT.length() - 3);
+        }
+    }
+
+    @Test
+    void shouldRejectInvalidRange() {
+        String key = "/test/resources/range.txt";
+
+        assertThatThrownBy(() -> readFromBucket(TEST_BUCKET, key, -1, 7))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> readFromBucket(TEST_BUCKET, key, 0, -1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> readFromBucket(TEST_BUCKET, key, 0, 7, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldSyncDirectoryWithTransferManager() throws Exception {
+        Path source = Files.createDirectories(tempDir.resolve("source"));
+        for (int i = 0; i < 20; i++) {
+            Path file = source.resolve("dir" + (i % 3)).resolve("file" + i + ".json");
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, TEST_CONTENT + i);
+        }
+        AtomicInteger progressReports = new AtomicInteger();
+        TransferManagerConfig config = TransferManagerConfig.builder()
+                .workerCount(4)
+                .progressListener(progress -> progressReports.incrementAndGet())
+                .build();
+
+        try (StorageTransferManager transferManager = newTransferManager(config)) {
+            TransferResult upload = transferManager.uploadDirectory(source, TEST_BUCKET, "sync");
+            assertThat(upload.isSuccessful()).isTrue();
+            assertThat(upload.getFilesTransferred()).isEqualTo(20);
+            assertThat(progressReports).hasValue(20);
+
+            Files.writeString(source.resolve("dir0").resolve("file0.json"), "changed");
+            TransferResult resync = transferManager.uploadDirectory(source, TEST_BUCKET, "sync");
+            assertThat(resync.getFilesTransferred()).isEqualTo(1);
+            assertThat(resync.getFilesSkipped()).isEqualTo(19);
+
+            Path destination = tempDir.resolve("destination");
+            TransferResult download = transferManager.downloadDirectory(TEST_BUCKET, "sync", destination);
+            assertThat(download.isSuccessful()).isTrue();
+            assertThat(download.getFilesTransferred()).isEqualTo(20);
+            assertThat(Files.readString(destination.resolve("dir0").resolve("file0.json"))).isEqualTo("changed");
+            assertThat(Files.readString(destination.resolve("dir1").resolve("file1.json"))).isEqualTo(TEST_CONTENT + 1);
+        }
+    }
+
+    @Test
+    void shouldTransferLargeFilesInRangesAndSkipUnchangedDownloads() throws Exception {
+        Path source = Files.createDirectories(tempDir.resolve("largeSource"));
+        byte[] content = randomBytes(5 * 32 * 1024 + 7);
+        for (int i = 0; i < 3; i++) {
+            Files.write(source.resolve("large" + i + ".bin"), content);
+        }
+        TransferManagerConfig config = TransferManagerConfig.builder()
+                .workerCount(4)
+                .singleRequestThreshold(1024)
+                .largeObjectConcurrency(1)
+                .largeObjectTransfer(TransferConfig.builder()
+                        .partSize(32 * 1024)
+                        .concurrency(2)
+                        .chunkSize(256 * 1024)
+                        .build())
+                .build();
+
+        try (StorageTransferManager transferManager = newTransferManager(config)) {
+            TransferResult upload = transferManager.uploadDirectory(source, TEST_BUCKET, "large");
+            assertThat(upload.isSuccessful()).isTrue();
+            assertThat(upload.getFilesTransferred()).isEqualTo(3);
+            assertThat(upload.getBytesTransferred()).isEqualTo(3L * content.length);
+
+            Path destination = tempDir.resolve("largeDestination");
+            TransferResult download = transferManager.downloadDirectory(TEST_BUCKET, "large", destination);
+            assertThat(download.isSuccessful()).isTrue();
+            assertThat(download.getFilesTransferred()).isEqualTo(3);
+            assertThat(Files.readAllBytes(destination.resolve("large2.bin"))).isEqualTo(content);
+            assertThat(getStorageClient().get(TEST_BUCKET, "large/large2.bin").getContentType())
+                    .isEqualTo("application/octet-stream");
+
+            TransferResult resync = transferManager.downloadDirectory(TEST_BUCKET, "large", destination);
+            assertThat(resync.getFilesTransferred()).isZero();
+            assertThat(resync.getFilesSkipped()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void shouldRejectTransferManagerWithoutLargeObjectSlots() {
+        assertThatThrownBy(() -> newTransferManager(TransferManagerConfig.builder()
+                .largeObjectConcurrency(0)
+                .build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
     private static void configureLocalGCSUrl(String localGCSUrl) throws Exception {
         String modifyExternalUrlRequestUri = localGCSUrl + "/_internal/config";
         String updateExternalUrlJson = "{"
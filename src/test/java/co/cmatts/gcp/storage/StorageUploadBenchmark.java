@@ -0,0 +1,101 @@
+package co.cmatts.gcp.storage;
+
+import org.openjdk.jmh.annotations.*;
+import org.testcontainers.containers.GenericContainer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares heap buffered and memory mapped uploads of a large local file to fake-gcs-server.
+ * Run with {@code -Dbenchmark=StorageUploadBenchmark} and add {@code -prof gc} to the JMH arguments to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StorageUploadBenchmark {
+    private static final String TEST_BUCKET = "benchmarkbucket";
+
+    @Param({"268435456"})
+    private long fileSize;
+
+    private GenericContainer<?> localGCS;
+    private Path file;
+    private TransferConfig config;
+
+    @Setup
+    public void setup() throws Exception {
+        localGCS = new GenericContainer<>("fsouza/fake-gcs-server")
+                .withExposedPorts(4443)
+                .withCreateContainerCmdModifier(cmd -> cmd.withEntrypoint(
+                        "/bin/fake-gcs-server",
+                        "-scheme", "http"
+                ));
+        localGCS.start();
+        String localGCSUrl = "http://" + localGCS.getHost() + ":" + localGCS.getFirstMappedPort();
+        configureLocalGCSUrl(localGCSUrl);
+        System.setProperty("local.gcs.url", localGCSUrl);
+        System.setProperty("local.project", "test-project");
+
+        StorageClient.resetStorageClient();
+        StorageClient.createBucket(TEST_BUCKET);
+
+        file = Files.createTempFile("upload-benchmark", ".bin");
+        writeRandomFile(file, fileSize);
+        config = TransferConfig.builder()
+                .partSize(Long.MAX_VALUE)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        localGCS.stop();
+        StorageClient.resetStorageClient();
+    }
+
+    @Benchmark
+    public void uploadHeapBuffered() throws Exception {
+        StorageClient.writeToBucket(TEST_BUCKET, "buffered.bin", file, config);
+    }
+
+    @Benchmark
+    public void uploadMemoryMapped() throws Exception {
+        StorageClient.writeToBucketMapped(TEST_BUCKET, "mapped.bin", file, config);
+    }
+
+    private static void writeRandomFile(Path path, long size) throws Exception {
+        Random random = new Random(size);
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long written = 0;
+            while (written < size) {
+                random.nextBytes(buffer.array());
+                buffer.limit((int) Math.min(buffer.capacity(), size - written));
+                written += channel.write(buffer);
+                buffer.clear();
+            }
+        }
+    }
+
+    private static void configureLocalGCSUrl(String localGCSUrl) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(localGCSUrl + "/_internal/config"))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"externalUrl\": \"" + localGCSUrl + "\"}"))
+                .build();
+        HttpClient.newBuilder().build().send(req, HttpResponse.BodyHandlers.discarding());
+    }
+}